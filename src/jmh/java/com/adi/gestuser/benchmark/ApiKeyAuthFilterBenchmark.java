@@ -0,0 +1,81 @@
+package com.adi.gestuser.benchmark;
+
+import com.adi.gestuser.entity.ApiKey;
+import com.adi.gestuser.enums.ApikeyRole;
+import com.adi.gestuser.repository.ApiKeyRepository;
+import com.adi.gestuser.security.ApiKeyAuthFilter;
+import com.adi.gestuser.security.ApiKeyCache;
+import jakarta.servlet.FilterChain;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autenticazione di una richiesta con ApiKeyAuthFilter: API key valida servita da ApiKeyCache
+ * e API key sconosciuta rifiutata dall'insieme delle chiavi esistenti. Il repository stub viene interrogato solo al primo giro.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ApiKeyAuthFilterBenchmark {
+
+    private static final String VALID_KEY = "api-key-write";
+
+    private static final String UNKNOWN_KEY = "api-key-unknown";
+
+    private ApiKeyAuthFilter apiKeyAuthFilter;
+
+    private MockHttpServletRequest validRequest;
+
+    private MockHttpServletRequest unknownRequest;
+
+    private final FilterChain filterChain = ( request, response ) -> {
+    };
+
+    @Setup
+    public void setup() {
+        ApiKeyRepository apiKeyRepository = Mockito.mock( ApiKeyRepository.class );
+        Mockito.when( apiKeyRepository.findByApikey( VALID_KEY ) )
+                .thenReturn( new ApiKey( VALID_KEY, LocalDateTime.now().plusYears( 1 ), ApikeyRole.WRITE ) );
+
+        Mockito.when( apiKeyRepository.findAllApikeys() ).thenReturn( List.of( VALID_KEY ) );
+
+        ApiKeyCache apiKeyCache = new ApiKeyCache( apiKeyRepository, 1000, Duration.ofMinutes( 5 ), Duration.ofMinutes( 1 ) );
+        apiKeyAuthFilter = new ApiKeyAuthFilter( apiKeyCache );
+
+        validRequest = new MockHttpServletRequest( "GET", "/api/user/1" );
+        validRequest.addHeader( "X-API-KEY", VALID_KEY );
+
+        unknownRequest = new MockHttpServletRequest( "GET", "/api/user/1" );
+        unknownRequest.addHeader( "X-API-KEY", UNKNOWN_KEY );
+    }
+
+    @TearDown(Level.Invocation)
+    public void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+
+    @Benchmark
+    public int validApiKey() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        apiKeyAuthFilter.doFilter( validRequest, response, filterChain );
+        return response.getStatus();
+    }
+
+    @Benchmark
+    public int unknownApiKey() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        apiKeyAuthFilter.doFilter( unknownRequest, response, filterChain );
+        return response.getStatus();
+    }
+}
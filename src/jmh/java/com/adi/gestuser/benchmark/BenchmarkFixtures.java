@@ -0,0 +1,137 @@
+package com.adi.gestuser.benchmark;
+
+import com.adi.gestuser.dto.ProfilePermissionDTO;
+import com.adi.gestuser.dto.ProfilePermissionProjection;
+import com.adi.gestuser.dto.UserDTO;
+import com.adi.gestuser.entity.Permission;
+import com.adi.gestuser.entity.Profile;
+import com.adi.gestuser.entity.ProfilePermission;
+import com.adi.gestuser.entity.User;
+import com.adi.gestuser.enums.PermissionList;
+import com.adi.gestuser.enums.ProfileList;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dati di prova comuni ai benchmark: utenti ADMIN con tutti i permessi di PermissionList, come dopo UsersMockInit.
+ */
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+
+    /**
+     * OBJECT MAPPER, configurato come quello di Spring Boot
+     * @return ObjectMapper per la serializzazione delle risposte
+     */
+    static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable( SerializationFeature.WRITE_DATES_AS_TIMESTAMPS )
+                .build();
+    }
+
+    /**
+     * USER, utente con profilo ADMIN e tutti i permessi
+     * @param id id dell'utente e del profilo
+     * @return utente con profilo e permessi inizializzati
+     */
+    static User user( long id ) {
+        User user = new User();
+        user.setId( id );
+        user.setUsername( "user" + id );
+        user.setEmail( "user" + id + "@example.com" );
+        user.setPassword( "$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z5Ht2Bq2bW2Vx9Pp5sB6N1aK" );
+        user.setEnabled( true );
+        user.setDateTokenCheck( LocalDateTime.of( 2024, 1, 1, 12, 0 ) );
+
+        Profile profile = new Profile( ProfileList.ADMIN );
+        profile.setId( id );
+        profile.setUser( user );
+
+        Set<ProfilePermission> profilePermissions = new HashSet<>();
+        long permissionId = 1;
+
+        for( PermissionList permissionName : PermissionList.values() ) {
+            Permission permission = new Permission();
+            permission.setId( permissionId );
+            permission.setName( permissionName );
+
+            profilePermissions.add( ProfilePermission.builder()
+                    .id( id * 100 + permissionId++ )
+                    .profile( profile )
+                    .permission( permission )
+                    .valueRead( 1 )
+                    .valueCreate( 1 )
+                    .valueUpdate( 1 )
+                    .valueDelete( 1 )
+                    .build() );
+        }
+
+        profile.setProfilePermissions( profilePermissions );
+        user.setProfile( profile );
+
+        return user;
+    }
+
+    /**
+     * PROFILE PERMISSION PROJECTIONS, le righe restituite da ProfilePermissionRepository per un profilo ADMIN
+     * @param profileId id del profilo
+     * @return proiezioni dei permessi
+     */
+    static List<ProfilePermissionProjection> profilePermissionProjections( long profileId ) {
+        List<ProfilePermissionProjection> projections = new ArrayList<>();
+        long permissionId = 1;
+
+        for( PermissionList permissionName : PermissionList.values() ) {
+            projections.add( new ProfilePermissionProjection( profileId, profileId * 100 + permissionId++, permissionName,
+                    1, 1, 1, 1 ) );
+        }
+
+        return projections;
+    }
+
+    /**
+     * USER DTOS, pagina di utenti come restituita dagli endpoint di lista
+     * @param size numero di utenti
+     * @return lista di UserDTO
+     */
+    static List<UserDTO> userDTOs( int size ) {
+        Set<ProfilePermissionDTO> profilePermissions = new HashSet<>();
+
+        for( ProfilePermissionProjection projection : profilePermissionProjections( 1 ) ) {
+            profilePermissions.add( ProfilePermissionDTO.builder()
+                    .id( projection.id() )
+                    .permissionName( projection.permissionName().name() )
+                    .valueRead( projection.valueRead() )
+                    .valueCreate( projection.valueCreate() )
+                    .valueUpdate( projection.valueUpdate() )
+                    .valueDelete( projection.valueDelete() )
+                    .build() );
+        }
+
+        List<UserDTO> users = new ArrayList<>( size );
+
+        for( int i = 1; i <= size; i++ ) {
+            UserDTO userDTO = new UserDTO();
+            userDTO.setId( ( long ) i );
+            userDTO.setUsername( "user" + i );
+            userDTO.setEmail( "user" + i + "@example.com" );
+            userDTO.setEnabled( true );
+            userDTO.setDateTokenCheck( LocalDateTime.of( 2024, 1, 1, 12, 0 ) );
+            userDTO.setProfileName( ProfileList.ADMIN.name() );
+            userDTO.setProfilePermissions( profilePermissions );
+            userDTO.setPermissionMask( 0x0FFFFFFF );
+            users.add( userDTO );
+        }
+
+        return users;
+    }
+}
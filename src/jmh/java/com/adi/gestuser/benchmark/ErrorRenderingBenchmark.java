@@ -0,0 +1,62 @@
+package com.adi.gestuser.benchmark;
+
+import com.adi.gestuser.dto.ErrorDetailsDTO;
+import com.adi.gestuser.exception.ErrorCodeList;
+import com.adi.gestuser.exception.GlobalExceptionHandler;
+import com.adi.gestuser.exception.ResourceNotFoundException;
+import com.adi.gestuser.exception.appException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Risposta di errore di GlobalExceptionHandler, dalla gestione dell'eccezione al corpo JSON.
+ * Le eccezioni sono create una sola volta: il costo misurato è quello della resa, non dello stack trace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ErrorRenderingBenchmark {
+
+    private GlobalExceptionHandler globalExceptionHandler;
+
+    private ObjectMapper objectMapper;
+
+    private WebRequest webRequest;
+
+    private appException appException;
+
+    private ResourceNotFoundException resourceNotFoundException;
+
+    @Setup
+    public void setup() {
+        globalExceptionHandler = new GlobalExceptionHandler();
+        objectMapper = BenchmarkFixtures.objectMapper();
+        webRequest = new ServletWebRequest( new MockHttpServletRequest( "GET", "/api/user/username_email/nobody" ) );
+        appException = new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.NF404 );
+        resourceNotFoundException = new ResourceNotFoundException( ErrorCodeList.NF404 );
+    }
+
+
+    @Benchmark
+    public byte[] appException() throws Exception {
+        return render( globalExceptionHandler.handleResourceNotFoundException( appException, webRequest ) );
+    }
+
+    @Benchmark
+    public byte[] resourceNotFound() throws Exception {
+        return render( globalExceptionHandler.handleResourceNotFoundException( resourceNotFoundException, webRequest ) );
+    }
+
+    private byte[] render( ResponseEntity<ErrorDetailsDTO> response ) throws Exception {
+        return objectMapper.writeValueAsBytes( response.getBody() );
+    }
+}
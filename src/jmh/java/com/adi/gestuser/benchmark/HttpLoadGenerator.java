@@ -0,0 +1,101 @@
+package com.adi.gestuser.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generatore di carico HTTP a client chiusi contro un'istanza avviata dell'applicazione, per confrontare
+ * thread di piattaforma e virtual thread (VIRTUAL_THREADS_ENABLED) e il limite di ConcurrencyLimitFilter,
+ * attivo solo con i virtual thread.
+ * Ogni client è un virtual thread che ripete la richiesta appena riceve la risposta; {id} nel percorso
+ * viene sostituito con un id tra 1 e maxId, diverso per client. Stampa throughput, 503 ed errori, p50 e p99.
+ * <p>
+ * mvn -Pjmh test-compile exec:exec@load -Dload.url=http://localhost:8080 -Dload.clients=1000 -Dload.seconds=30
+ */
+public final class HttpLoadGenerator {
+
+    // Latenze registrate per client: oltre il limite le richieste vengono contate ma non misurate
+    private static final int MAX_SAMPLES_PER_CLIENT = 100_000;
+
+    private HttpLoadGenerator() {
+    }
+
+    public static void main( String[] args ) throws InterruptedException {
+        if( args.length < 5 ) {
+            System.err.println( "Uso: HttpLoadGenerator <baseUrl> <apiKey> <path con {id}> <client> <secondi> [maxId]" );
+            System.exit( 1 );
+        }
+
+        String baseUrl = args[0];
+        String apiKey = args[1];
+        String path = args[2];
+        int clients = Integer.parseInt( args[3] );
+        int seconds = Integer.parseInt( args[4] );
+        int maxId = args.length > 5 ? Integer.parseInt( args[5] ) : 100;
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor( Executors.newVirtualThreadPerTaskExecutor() )
+                .connectTimeout( Duration.ofSeconds( 10 ) )
+                .build();
+
+        AtomicLong ok = new AtomicLong();
+        AtomicLong unavailable = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+
+        long end = System.nanoTime() + Duration.ofSeconds( seconds ).toNanos();
+
+        try( ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor() ) {
+            for( int c = 0; c < clients; c++ ) {
+                HttpRequest request = HttpRequest.newBuilder( URI.create( baseUrl + path.replace( "{id}", String.valueOf( 1 + c % maxId ) ) ) )
+                        .header( "X-API-KEY", apiKey )
+                        .timeout( Duration.ofSeconds( 60 ) )
+                        .build();
+
+                clientThreads.submit( () -> {
+                    long[] samples = new long[MAX_SAMPLES_PER_CLIENT];
+                    int count = 0;
+
+                    while( System.nanoTime() < end ) {
+                        long start = System.nanoTime();
+                        try {
+                            int status = client.send( request, HttpResponse.BodyHandlers.discarding() ).statusCode();
+                            if( status == 200 ) ok.incrementAndGet();
+                            else if( status == 503 ) unavailable.incrementAndGet();
+                            else errors.incrementAndGet();
+                        } catch( Exception e ) {
+                            errors.incrementAndGet();
+                        }
+                        if( count < samples.length ) samples[count++] = System.nanoTime() - start;
+                    }
+
+                    latencies.add( Arrays.copyOf( samples, count ) );
+                } );
+            }
+        }
+
+        long[] sorted = latencies.stream().flatMapToLong( Arrays::stream ).sorted().toArray();
+        if( sorted.length == 0 ) {
+            System.out.println( "Nessuna richiesta completata" );
+            return;
+        }
+
+        System.out.printf( Locale.ROOT, "client=%d durata=%ds ok=%d 503=%d errori=%d throughput=%.0f req/s p50=%.1fms p99=%.1fms%n",
+                clients, seconds, ok.get(), unavailable.get(), errors.get(), ok.get() / (double) seconds,
+                percentile( sorted, 0.50 ), percentile( sorted, 0.99 ) );
+    }
+
+    private static double percentile( long[] sorted, double percentile ) {
+        int index = Math.min( sorted.length - 1, (int) ( sorted.length * percentile ) );
+        return sorted[index] / 1_000_000.0;
+    }
+}
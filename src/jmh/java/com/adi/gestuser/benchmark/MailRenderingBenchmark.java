@@ -0,0 +1,126 @@
+package com.adi.gestuser.benchmark;
+
+import com.adi.gestuser.service.impl.EmailServiceImpl;
+import com.adi.gestuser.service.impl.SmtpTransportPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo per messaggio di rendering HTML e costruzione del MimeMessage, serializzazione compresa (senza rete).
+ * legacy replica la versione precedente: concatenazione di stringhe e logo riletto dal classpath ad ogni messaggio;
+ * templates passa da EmailServiceImpl, con template compilati e logo condiviso in memoria.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MailRenderingBenchmark {
+
+    private static final String HOST = "http://localhost/";
+
+    private static final String FROM = "noreply@example.com";
+
+    private static final String SUBJECT = "Richiesta di verifica Account e password temporanea";
+
+    // Valori non costanti, per evitare che il JIT precalcoli la concatenazione
+    private String name = "mario.rossi";
+
+    private String token = "0b4f5a36-8f0e-4c43-a5a4-0a3b2cbb7a11";
+
+    private String temporaryPassword = "Xk9!pQ2rT7";
+
+    private JavaMailSenderImpl mailSender;
+
+    private EmailServiceImpl emailService;
+
+    @Setup
+    public void setup() {
+        mailSender = new JavaMailSenderImpl();
+
+        // Nessun invio: il messaggio viene solo serializzato, come farebbe il Transport
+        SmtpTransportPool serializingPool = new SmtpTransportPool( mailSender, 1, Duration.ofSeconds( 30 ), 500, new SimpleMeterRegistry() ) {
+            @Override
+            public void send( MimeMessage message ) {
+                try {
+                    message.saveChanges();
+                    message.writeTo( OutputStream.nullOutputStream() );
+                } catch( IOException | MessagingException e ) {
+                    throw new IllegalStateException( e );
+                }
+            }
+        };
+
+        emailService = new EmailServiceImpl( mailSender, serializingPool );
+        ReflectionTestUtils.setField( emailService, "host", HOST );
+        ReflectionTestUtils.setField( emailService, "fromEmail", FROM );
+    }
+
+
+    @Benchmark
+    public String renderLegacy() {
+        return legacyHtmlVerify( name, token, temporaryPassword );
+    }
+
+    @Benchmark
+    public String renderTemplate() {
+        return emailService.getHtmlVerify( name, token, temporaryPassword );
+    }
+
+    @Benchmark
+    public void renderAndBuildLegacy() throws MessagingException, IOException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper( message, MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED, StandardCharsets.UTF_8.name() );
+        helper.setSubject( SUBJECT );
+        helper.setFrom( FROM );
+        helper.setTo( "mario.rossi@example.com" );
+        helper.setText( renderLegacy(), true );
+        helper.addInline( "logoImage", new ClassPathResource( "static/images/logo.jpg" ) );
+
+        message.saveChanges();
+        message.writeTo( OutputStream.nullOutputStream() );
+    }
+
+    @Benchmark
+    public void renderAndBuildTemplates() {
+        emailService.sendMailMessage( name, "mario.rossi@example.com", token, temporaryPassword, SUBJECT );
+    }
+
+
+    // Versione precedente di EmailServiceImpl.getHtmlVerify
+    private static String legacyHtmlVerify( String name, String token, String temporaryPassword ) {
+        String verificationUrl = HOST + "auth/email-confirmation?token=" + token;
+
+        return "<html>" +
+                "<body>" +
+                "<img src='cid:logoImage' alt='SmartAxcy Logo' style='width: 200px;'/>" +
+                "<h1>Ciao " + name + ",</h1>" +
+                "<p>Benvenuto in SmartAxcy, di seguito la tua Password temporanea: </p>" +
+                "<br />" +
+                "<p>" + temporaryPassword + "</p>" +
+                "<br />" +
+                "<p>Al primo Login ti verrà chiesto di cambiare la Password, ma prima abbiamo bisogno che tu verifichi questa email.</p>" +
+                "<p>Per favore clicca sul bottone sottostante per verificare il tuo account:</p>" +
+                "<br />" +
+                "<p><a href='" + verificationUrl + "' " +
+                "style='background-color: #00c7db; color: white; padding: 10px 20px; text-decoration: none; " +
+                "border-radius: 5px;'>" +
+                "Verifica Account</a></p>" +
+                "<br />" +
+                "<p>Grazie,<br/>Il team di SmartAxcy</p>" +
+                "</body>" +
+                "</html>";
+    }
+}
@@ -0,0 +1,38 @@
+package com.adi.gestuser.benchmark;
+
+import com.adi.gestuser.dto.PagedResponseDTO;
+import com.adi.gestuser.dto.UserDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializzazione JSON di una pagina di utenti, al variare della dimensione della pagina.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PagedResponseSerializationBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    private int size;
+
+    private ObjectMapper objectMapper;
+
+    private PagedResponseDTO<UserDTO> page;
+
+    @Setup
+    public void setup() {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        page = new PagedResponseDTO<>( BenchmarkFixtures.userDTOs( size ), 0, size, ( long ) size * 10, 10, false );
+    }
+
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes( page );
+    }
+}
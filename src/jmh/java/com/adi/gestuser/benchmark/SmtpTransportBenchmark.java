@@ -0,0 +1,76 @@
+package com.adi.gestuser.benchmark;
+
+import com.adi.gestuser.SmtpStub;
+import com.adi.gestuser.service.impl.SmtpTransportPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invio SMTP verso SmtpStub: una connessione per messaggio (JavaMailSender.send) contro le connessioni
+ * riutilizzate di SmtpTransportPool. connectLatencyMillis simula il costo di handshake, STARTTLS e AUTH.
+ * Al termine vengono stampati connessioni aperte e messaggi ricevuti dallo stub.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class SmtpTransportBenchmark {
+
+    @Param({ "0", "20" })
+    private long connectLatencyMillis;
+
+    private SmtpStub stub;
+
+    private JavaMailSenderImpl mailSender;
+
+    private SmtpTransportPool pool;
+
+    @Setup
+    public void setup() throws IOException {
+        stub = new SmtpStub( connectLatencyMillis );
+
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost( "localhost" );
+        mailSender.setPort( stub.port() );
+
+        pool = new SmtpTransportPool( mailSender, 4, Duration.ofSeconds( 30 ), 500, new SimpleMeterRegistry() );
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.closeAll();
+        stub.close();
+        System.out.printf( "%nconnessioni aperte: %d, messaggi ricevuti: %d%n", stub.connections.get(), stub.messages.get() );
+    }
+
+
+    @Benchmark
+    public void sendPerMessageConnection() throws MessagingException {
+        mailSender.send( message() );
+    }
+
+    @Benchmark
+    public void sendPooled() throws MessagingException {
+        pool.send( message() );
+    }
+
+
+    private MimeMessage message() throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper( message, false, "UTF-8" );
+        helper.setFrom( "noreply@example.com" );
+        helper.setTo( "user@example.com" );
+        helper.setSubject( "Benchmark" );
+        helper.setText( "<html><body><p>Benchmark</p></body></html>", true );
+        return message;
+    }
+}
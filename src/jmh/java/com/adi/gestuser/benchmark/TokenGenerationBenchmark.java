@@ -0,0 +1,49 @@
+package com.adi.gestuser.benchmark;
+
+import com.adi.gestuser.entity.Confirmation;
+import com.adi.gestuser.entity.User;
+import com.adi.gestuser.utils.FirstPasswordGenerator;
+import com.adi.gestuser.utils.TimeOrderedUuid;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generazione delle credenziali temporanee: password iniziale e token di conferma (UUID v7 contro UUID v4).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TokenGenerationBenchmark {
+
+    private User user;
+
+    @Setup
+    public void setup() {
+        user = BenchmarkFixtures.user( 1 );
+    }
+
+
+    @Benchmark
+    public String generatePass() {
+        return FirstPasswordGenerator.generatePass();
+    }
+
+    @Benchmark
+    public UUID confirmationToken() {
+        return new Confirmation( user ).getToken();
+    }
+
+    @Benchmark
+    public UUID randomUuid() {
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    public UUID timeOrderedUuid() {
+        return TimeOrderedUuid.generate();
+    }
+}
@@ -0,0 +1,69 @@
+package com.adi.gestuser.benchmark;
+
+import com.adi.gestuser.cache.ProfilePermissionCache;
+import com.adi.gestuser.cache.UserCountCache;
+import com.adi.gestuser.cache.UserCredentialCache;
+import com.adi.gestuser.dto.ProfilePermissionDTO;
+import com.adi.gestuser.dto.UserDTO;
+import com.adi.gestuser.entity.ProfilePermission;
+import com.adi.gestuser.entity.User;
+import com.adi.gestuser.repository.ProfilePermissionRepository;
+import com.adi.gestuser.repository.ProfileRepository;
+import com.adi.gestuser.repository.UserRepository;
+import com.adi.gestuser.service.impl.UserServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mappatura entità - DTO di UserServiceImpl. I permessi del profilo arrivano da ProfilePermissionCache già popolata,
+ * come a regime: il repository stub viene interrogato solo al primo giro di warmup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserMappingBenchmark {
+
+    private UserServiceImpl userService;
+
+    private User user;
+
+    private ProfilePermission profilePermission;
+
+    @Setup
+    public void setup() {
+        ProfilePermissionRepository profilePermissionRepository = Mockito.mock( ProfilePermissionRepository.class );
+        Mockito.when( profilePermissionRepository.findProjectionsByProfileId( Mockito.anyLong() ) )
+                .thenAnswer( invocation -> BenchmarkFixtures.profilePermissionProjections( invocation.getArgument( 0 ) ) );
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        userService = new UserServiceImpl(
+                Mockito.mock( UserRepository.class ),
+                Mockito.mock( ProfileRepository.class ),
+                profilePermissionRepository,
+                new ProfilePermissionCache( 10_000, meterRegistry ),
+                new UserCountCache( 100, Duration.ofMinutes( 1 ) ),
+                new UserCredentialCache( 10_000, Duration.ofSeconds( 30 ), meterRegistry )
+        );
+
+        user = BenchmarkFixtures.user( 1 );
+        profilePermission = user.getProfile().getProfilePermissions().iterator().next();
+    }
+
+
+    @Benchmark
+    public UserDTO mapUserToDTO() {
+        return userService.mapUserToDTO( user );
+    }
+
+    @Benchmark
+    public ProfilePermissionDTO mapProfilePermissionToDTO() {
+        return userService.mapProfilePermissionToDTO( profilePermission );
+    }
+}
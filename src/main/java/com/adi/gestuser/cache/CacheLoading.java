@@ -0,0 +1,132 @@
+package com.adi.gestuser.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Caricamento delle cache Caffeine fuori dai lock della mappa.
+ * Cache.get( key, loader ) esegue il loader dentro ConcurrentHashMap.compute, cioè in un blocco synchronized:
+ * con i virtual thread una query JDBC lì dentro blocca anche il carrier thread. Qui nella mappa viene messo solo
+ * un CompletableFuture vuoto, il caricamento avviene nel thread chiamante (con la sua transazione) e le richieste
+ * concorrenti della stessa chiave attendono lo stesso future. Un'invalidazione durante il caricamento rimuove
+ * il future, il cui valore non resta quindi in cache. Un valore null non viene messo in cache.
+ */
+public final class CacheLoading {
+
+    private CacheLoading() {
+    }
+
+
+    /**
+     * GET OR LOAD
+     * @param cache cache asincrona
+     * @param key chiave
+     * @param loader caricamento in caso di miss, eseguito nel thread chiamante
+     * @return valore in cache o appena caricato, null se il loader restituisce null
+     */
+    public static <K, V> V getOrLoad( AsyncCache<K, V> cache, K key, Function<K, V> loader ) {
+        // getIfPresent registra hit e miss nelle statistiche
+        CompletableFuture<V> cached = cache.getIfPresent( key );
+
+        if( cached != null ) {
+            return join( cached );
+        }
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> prior = cache.asMap().putIfAbsent( key, future );
+
+        if( prior != null ) {
+            return join( prior );
+        }
+
+        try {
+            V value = loader.apply( key );
+            future.complete( value );
+            return value;
+        } catch( RuntimeException | Error e ) {
+            cache.asMap().remove( key, future );
+            future.completeExceptionally( e );
+            throw e;
+        }
+    }
+
+    /**
+     * GET ALL OR LOAD, le chiavi mancanti vengono caricate con un'unica chiamata al loader
+     * @param cache cache asincrona
+     * @param keys chiavi
+     * @param loader caricamento massivo delle sole chiavi mancanti, eseguito nel thread chiamante
+     * @return mappa chiave - valore per ogni chiave con valore non null
+     */
+    public static <K, V> Map<K, V> getAllOrLoad( AsyncCache<K, V> cache, Collection<K> keys,
+                                                 Function<Set<K>, Map<K, V>> loader ) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> owned = new HashMap<>();
+
+        for( K key : keys ) {
+            CompletableFuture<V> future = cache.getIfPresent( key );
+
+            if( future == null ) {
+                CompletableFuture<V> created = new CompletableFuture<>();
+                CompletableFuture<V> prior = cache.asMap().putIfAbsent( key, created );
+
+                if( prior == null ) {
+                    owned.put( key, created );
+                    future = created;
+                } else {
+                    future = prior;
+                }
+            }
+
+            futures.put( key, future );
+        }
+
+        if( !owned.isEmpty() ) {
+            try {
+                Map<K, V> loaded = loader.apply( Set.copyOf( owned.keySet() ) );
+                owned.forEach( ( key, future ) -> future.complete( loaded.get( key ) ) );
+            } catch( RuntimeException | Error e ) {
+                owned.forEach( ( key, future ) -> {
+                    cache.asMap().remove( key, future );
+                    future.completeExceptionally( e );
+                } );
+                throw e;
+            }
+        }
+
+        Map<K, V> result = new HashMap<>();
+        futures.forEach( ( key, future ) -> {
+            V value = join( future );
+
+            if( value != null ) {
+                result.put( key, value );
+            }
+        } );
+
+        return result;
+    }
+
+
+    private static <V> V join( CompletableFuture<V> future ) {
+        try {
+            return future.join();
+        } catch( CompletionException e ) {
+            if( e.getCause() instanceof RuntimeException runtimeException ) {
+                throw runtimeException;
+            }
+
+            if( e.getCause() instanceof Error error ) {
+                throw error;
+            }
+
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.adi.gestuser.cache;
+
+import com.adi.gestuser.enums.TokenType;
+import com.adi.gestuser.repository.ConfirmationRepository;
+import com.adi.gestuser.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Finestra di coalescenza delle richieste di recupero password e di reinvio della verifica, per utente e TokenType.
+ * La prima richiesta della finestra viene eseguita, le successive riusano il token già inviato: nessuna nuova
+ * conferma, nessuna nuova mail. Sul nodo decide un putIfAbsent in memoria; tra i nodi decide il database:
+ * la riga dell'utente viene bloccata fino al commit e la richiesta passa solo se nessuna conferma dello stesso
+ * tipo ha lastRequestedDate nella finestra. Chi esegue la richiesta aggiorna lastRequestedDate sulla conferma
+ * creata o riusata, quindi anche i reinvii che non creano righe vengono riconosciuti.
+ */
+@Component
+public class ConfirmationRequestCoalescer {
+
+    private final Cache<Key, Boolean> recent;
+
+    private final ConfirmationRepository confirmationRepository;
+
+    private final UserRepository userRepository;
+
+    private final Duration window;
+
+    private final Map<TokenType, Counter> coalesced = new EnumMap<>( TokenType.class );
+
+    public ConfirmationRequestCoalescer( ConfirmationRepository confirmationRepository,
+                                         UserRepository userRepository,
+                                         @Value("${app.confirmation.coalesce.window}") Duration window,
+                                         @Value("${app.confirmation.coalesce.max_size}") long maxSize,
+                                         MeterRegistry meterRegistry ) {
+        this.confirmationRepository = confirmationRepository;
+        this.userRepository = userRepository;
+        this.window = window;
+        this.recent = Caffeine.newBuilder()
+                .maximumSize( maxSize )
+                .expireAfterWrite( window )
+                .build();
+
+        // Metriche: richieste duplicate assorbite dalla finestra
+        for( TokenType tokenType : TokenType.values() ) {
+            coalesced.put( tokenType, Counter.builder( "confirmation.requests.coalesced" )
+                    .tag( "token_type", tokenType.name() )
+                    .register( meterRegistry ) );
+        }
+    }
+
+
+    /**
+     * TRY ACQUIRE, da chiamare nella transazione della richiesta, che deve poi impostare lastRequestedDate
+     * sulla conferma creata o riusata
+     * @param userId id utente
+     * @param tokenType tipo di conferma richiesta
+     * @return true se la richiesta va eseguita, false se è un duplicato nella finestra
+     */
+    public boolean tryAcquire( Long userId, TokenType tokenType ) {
+        Key key = new Key( userId, tokenType );
+
+        if( recent.asMap().putIfAbsent( key, Boolean.TRUE ) != null ) {
+            coalesced.get( tokenType ).increment();
+            return false;
+        }
+
+        // Richieste concorrenti dello stesso utente su altri nodi attendono qui il commit di questa transazione
+        userRepository.lockById( userId );
+
+        // Richiesta eseguita da un altro nodo: la chiave resta, così i duplicati successivi non interrogano il database
+        if( confirmationRepository.existsByUserIdAndTokenTypeAndLastRequestedDateAfter( userId, tokenType, LocalDateTime.now().minus( window ) ) ) {
+            coalesced.get( tokenType ).increment();
+            return false;
+        }
+
+        // Se la transazione non va in commit la mail non parte: la richiesta successiva deve poter riprovare
+        if( TransactionSynchronizationManager.isSynchronizationActive() ) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+                @Override
+                public void afterCompletion( int status ) {
+                    if( status != STATUS_COMMITTED ) {
+                        recent.invalidate( key );
+                    }
+                }
+            } );
+        }
+
+        return true;
+    }
+
+
+    private record Key( Long userId, TokenType tokenType ) {
+    }
+}
@@ -0,0 +1,96 @@
+package com.adi.gestuser.cache;
+
+import com.adi.gestuser.dto.ProfilePermissionDTO;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Cache dei permessi di un profilo, indicizzata per id del profilo.
+ * Contiene insiemi immutabili di ProfilePermissionDTO già costruiti, da non modificare, e la relativa PermissionMatrix.
+ * Le voci vengono invalidate da ProfilePermissionCacheListener ad ogni scrittura di un ProfilePermission.
+ */
+@Component
+public class ProfilePermissionCache {
+
+    private static final String CACHE_NAME = "profilePermissions";
+
+    private final AsyncCache<Long, ProfilePermissions> cache;
+
+    public ProfilePermissionCache( @Value("${app.profile_permission.cache.max_size}") long maxSize,
+                                   MeterRegistry meterRegistry ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize( maxSize )
+                .recordStats()
+                .buildAsync();
+
+        // Metriche: cache.gets (hit/miss), cache.size, cache.evictions e hit ratio
+        CaffeineCacheMetrics.monitor( meterRegistry, cache, CACHE_NAME );
+        Gauge.builder( "cache.hit.ratio", cache, c -> c.synchronous().stats().hitRate() )
+                .tag( "cache", CACHE_NAME )
+                .register( meterRegistry );
+    }
+
+
+    /**
+     * GET, restituisce i permessi del profilo caricandoli alla prima richiesta
+     * @param profileId id del profilo
+     * @param loader caricamento dal database in caso di miss
+     * @return permessi immutabili e matrice dei permessi
+     */
+    public ProfilePermissions get( Long profileId, Function<Long, Set<ProfilePermissionDTO>> loader ) {
+        return CacheLoading.getOrLoad( cache, profileId, id -> ProfilePermissions.of( loader.apply( id ) ) );
+    }
+
+    /**
+     * GET ALL, restituisce i permessi di più profili; quelli mancanti vengono caricati con un'unica chiamata al loader
+     * @param profileIds id dei profili
+     * @param loader caricamento massivo dal database dei soli profili mancanti
+     * @return mappa id profilo - permessi immutabili e matrice, presente per ogni id richiesto
+     */
+    public Map<Long, ProfilePermissions> getAll( Collection<Long> profileIds,
+                                                 Function<Set<Long>, Map<Long, Set<ProfilePermissionDTO>>> loader ) {
+        return CacheLoading.getAllOrLoad( cache, profileIds, missingIds -> {
+            Set<Long> ids = Set.copyOf( missingIds );
+            Map<Long, Set<ProfilePermissionDTO>> loaded = loader.apply( ids );
+            Map<Long, ProfilePermissions> result = new HashMap<>();
+
+            // Anche i profili senza permessi vengono messi in cache, con un insieme vuoto
+            for( Long id : ids ) {
+                result.put( id, ProfilePermissions.of( loaded.getOrDefault( id, Set.of() ) ) );
+            }
+
+            return result;
+        } );
+    }
+
+    /**
+     * INVALIDATE, rimuove i permessi del profilo subito e, se c'è una transazione attiva, di nuovo dopo il commit,
+     * così che una lettura concorrente non rimetta in cache i dati precedenti
+     * @param profileId id del profilo
+     */
+    public void invalidate( Long profileId ) {
+        cache.synchronous().invalidate( profileId );
+
+        if( TransactionSynchronizationManager.isSynchronizationActive() ) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.synchronous().invalidate( profileId );
+                }
+            } );
+        }
+    }
+}
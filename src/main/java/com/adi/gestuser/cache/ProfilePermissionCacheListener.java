@@ -0,0 +1,64 @@
+package com.adi.gestuser.cache;
+
+import com.adi.gestuser.entity.Profile;
+import com.adi.gestuser.entity.ProfilePermission;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Cache;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Listener JPA dell'entità ProfilePermission: ogni salvataggio o eliminazione
+ * invalida i permessi del profilo in ProfilePermissionCache.
+ * Invalida anche, nella cache di secondo livello, la collezione profilePermissions del profilo, che Hibernate
+ * non aggiorna scrivendo dal lato ProfilePermission, e il profilo stesso. Chi scrive i permessi blocca il profilo
+ * con LockModeType.OPTIMISTIC_FORCE_INCREMENT, che ne incrementa la versione.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProfilePermissionCacheListener {
+
+    // ObjectProvider: il listener viene creato insieme all'EntityManagerFactory, prima della cache
+    private final ObjectProvider<ProfilePermissionCache> profilePermissionCache;
+
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onWrite( ProfilePermission profilePermission ) {
+        if( profilePermission.getProfile() == null ) {
+            return;
+        }
+
+        Long profileId = profilePermission.getProfile().getId();
+
+        profilePermissionCache.ifAvailable( cache -> cache.invalidate( profileId ) );
+        entityManagerFactory.ifAvailable( emf -> evictSecondLevel( emf.getCache().unwrap( Cache.class ), profileId ) );
+    }
+
+    private void evictSecondLevel( Cache cache, Long profileId ) {
+        evictProfile( cache, profileId );
+
+        // Di nuovo dopo il commit, così che una lettura concorrente non rimetta in cache i dati precedenti
+        if( TransactionSynchronizationManager.isSynchronizationActive() ) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictProfile( cache, profileId );
+                }
+            } );
+        }
+    }
+
+    private void evictProfile( Cache cache, Long profileId ) {
+        cache.evictEntityData( Profile.class, profileId );
+        cache.evictCollectionData( Profile.PERMISSIONS_ROLE, profileId );
+    }
+}
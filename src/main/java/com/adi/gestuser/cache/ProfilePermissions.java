@@ -0,0 +1,24 @@
+package com.adi.gestuser.cache;
+
+import com.adi.gestuser.dto.PermissionMatrix;
+import com.adi.gestuser.dto.ProfilePermissionDTO;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Voce di ProfilePermissionCache: permessi del profilo in righe e la stessa informazione in PermissionMatrix,
+ * calcolata una sola volta al caricamento.
+ */
+public record ProfilePermissions( Set<ProfilePermissionDTO> permissions, PermissionMatrix matrix ) {
+
+    public static final ProfilePermissions EMPTY = new ProfilePermissions( Set.of(), PermissionMatrix.EMPTY );
+
+    public static ProfilePermissions of( Collection<ProfilePermissionDTO> profilePermissions ) {
+        if( profilePermissions.isEmpty() ) {
+            return EMPTY;
+        }
+
+        return new ProfilePermissions( Set.copyOf( profilePermissions ), PermissionMatrix.of( profilePermissions ) );
+    }
+}
@@ -0,0 +1,38 @@
+package com.adi.gestuser.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Cache a vita breve dei totali delle liste paginate di utenti, usata per i count approssimati.
+ * La chiave identifica il filtro della lista (es. potere minimo o testo cercato).
+ */
+@Component
+public class UserCountCache {
+
+    private final AsyncCache<String, Long> cache;
+
+    public UserCountCache( @Value("${app.pagination.approximate_count.max_size}") long maxSize,
+                           @Value("${app.pagination.approximate_count.ttl}") Duration ttl ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize( maxSize )
+                .expireAfterWrite( ttl )
+                .buildAsync();
+    }
+
+
+    /**
+     * GET, restituisce il totale in cache o lo calcola con la query di conteggio
+     * @param key filtro della lista
+     * @param counter query di conteggio esatto
+     * @return totale, al più vecchio quanto il TTL configurato
+     */
+    public Long get( String key, Supplier<Long> counter ) {
+        return CacheLoading.getOrLoad( cache, key, k -> counter.get() );
+    }
+}
@@ -0,0 +1,140 @@
+package com.adi.gestuser.cache;
+
+import com.adi.gestuser.dto.UserCredentialProjection;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache a breve durata delle credenziali, indicizzata per username o email così come arrivano al login.
+ * Lo stesso utente può comparire con due chiavi; le voci vengono invalidate per id utente da UserCredentialCacheListener
+ * ad ogni scrittura di un User o del suo Profile. Gli utenti non trovati non vengono messi in cache.
+ * L'indice id utente - chiavi permette di rimuovere solo le voci dell'utente scritto. Un caricamento in corso,
+ * di cui l'utente si conosce solo alla fine, viene scartato se nel frattempo l'utente è stato invalidato:
+ * ogni invalidazione registra un numero di sequenza, confrontato con quello letto all'inizio del caricamento.
+ */
+@Component
+public class UserCredentialCache {
+
+    private static final String CACHE_NAME = "userCredentials";
+
+    private final AsyncCache<String, UserCredentialProjection> cache;
+
+    // Chiavi in cache per utente; una chiave già rimossa dalla cache può restarvi, senza effetti
+    private final Map<Long, Set<String>> keysByUser = new ConcurrentHashMap<>();
+
+    // Ultima invalidazione per utente, conservata per la durata delle voci: basta a coprire i caricamenti in corso
+    private final Cache<Long, Long> invalidations;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    public UserCredentialCache( @Value("${app.credential.cache.max_size}") long maxSize,
+                                @Value("${app.credential.cache.ttl}") Duration ttl,
+                                MeterRegistry meterRegistry ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize( maxSize )
+                .expireAfterWrite( ttl )
+                .recordStats()
+                .<String, UserCredentialProjection>removalListener( ( key, credentials, cause ) -> unindex( key, credentials ) )
+                .buildAsync();
+        this.invalidations = Caffeine.newBuilder()
+                .expireAfterWrite( ttl )
+                .build();
+
+        // Metriche: cache.gets (hit/miss), cache.size, cache.evictions e hit ratio
+        CaffeineCacheMetrics.monitor( meterRegistry, cache, CACHE_NAME );
+        Gauge.builder( "cache.hit.ratio", cache, c -> c.synchronous().stats().hitRate() )
+                .tag( "cache", CACHE_NAME )
+                .register( meterRegistry );
+    }
+
+
+    /**
+     * GET, restituisce le credenziali caricandole alla prima richiesta
+     * @param usernameOrEmail username o email usati per il login
+     * @param loader caricamento dal database in caso di miss, null se l'utente non esiste
+     * @return credenziali dell'utente, null se non esiste
+     */
+    public UserCredentialProjection get( String usernameOrEmail, Function<String, UserCredentialProjection> loader ) {
+        return CacheLoading.getOrLoad( cache, usernameOrEmail, key -> {
+            long loadSequence = sequence.get();
+            UserCredentialProjection credentials = loader.apply( key );
+
+            if( credentials != null ) {
+                index( credentials.id(), key );
+
+                // Utente scritto durante il caricamento: il valore letto può essere vecchio e non resta in cache
+                Long invalidatedAt = invalidations.getIfPresent( credentials.id() );
+                if( invalidatedAt != null && invalidatedAt > loadSequence ) {
+                    cache.asMap().remove( key );
+                }
+            }
+
+            return credentials;
+        } );
+    }
+
+    /**
+     * INVALIDATE, rimuove le voci dell'utente subito e, se c'è una transazione attiva, di nuovo dopo il commit.
+     * L'indice per id copre anche le chiavi non più valide, ad esempio la vecchia email dopo un cambio email
+     * @param userId id dell'utente
+     */
+    public void invalidate( Long userId ) {
+        evict( userId );
+
+        if( TransactionSynchronizationManager.isSynchronizationActive() ) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict( userId );
+                }
+            } );
+        }
+    }
+
+    private void evict( Long userId ) {
+        // Prima il numero di sequenza, poi l'indice: un caricamento che non vede l'invalidazione ha già indicizzato la chiave
+        invalidations.put( userId, sequence.incrementAndGet() );
+
+        Set<String> keys = keysByUser.remove( userId );
+        if( keys != null ) {
+            keys.forEach( cache.asMap()::remove );
+        }
+    }
+
+    private void index( Long userId, String key ) {
+        keysByUser.compute( userId, ( id, keys ) -> {
+            Set<String> result = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            result.add( key );
+            return result;
+        } );
+    }
+
+    private void unindex( String key, UserCredentialProjection credentials ) {
+        if( credentials == null ) {
+            return;
+        }
+
+        // La chiave resta indicizzata se nel frattempo è stata caricata di nuovo
+        keysByUser.computeIfPresent( credentials.id(), ( id, keys ) -> {
+            if( !cache.asMap().containsKey( key ) ) {
+                keys.remove( key );
+            }
+            return keys.isEmpty() ? null : keys;
+        } );
+    }
+}
@@ -0,0 +1,40 @@
+package com.adi.gestuser.cache;
+
+import com.adi.gestuser.entity.Profile;
+import com.adi.gestuser.entity.User;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener JPA delle entità User e Profile: ogni scrittura invalida le credenziali dell'utente in UserCredentialCache.
+ * Copre cambio password, cambio email, verifica e reinvio del token, modifica ed eliminazione dell'utente.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserCredentialCacheListener {
+
+    // ObjectProvider: il listener viene creato insieme all'EntityManagerFactory, prima della cache
+    private final ObjectProvider<UserCredentialCache> userCredentialCache;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onWrite( Object entity ) {
+        // Il profilo condivide l'id con il suo utente
+        Long userId = switch( entity ) {
+            case User user -> user.getId();
+            case Profile profile -> profile.getId();
+            default -> null;
+        };
+
+        if( userId == null ) {
+            return;
+        }
+
+        userCredentialCache.ifAvailable( cache -> cache.invalidate( userId ) );
+    }
+}
@@ -0,0 +1,96 @@
+package com.adi.gestuser.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limite alle richieste servite contemporaneamente, prima dell'autenticazione.
+ * Con i virtual thread Tomcat non ha più il tetto dei thread del pool: senza limite migliaia di richieste
+ * resterebbero in coda sul pool Hikari fino al timeout di connessione. Il limite segue quindi il pool:
+ * maximum-pool-size connessioni più pool_margin richieste che non tengono una connessione (letture dalle cache,
+ * serializzazione della risposta). Oltre il limite la richiesta attende al più acquire_timeout, poi riceve 503
+ * con Retry-After. Gli endpoint di actuator sono esclusi.
+ * Attivo solo con spring.threads.virtual.enabled=true: con i platform thread il tetto è già il pool di Tomcat
+ * (server.tomcat.threads.max) e il filtro rifiuterebbe richieste che Tomcat può servire.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final Semaphore permits;
+
+    private final long acquireTimeoutNanos;
+
+    private final Counter rejected;
+
+    public ConcurrencyLimitFilter( @Value("${spring.datasource.hikari.maximum-pool-size}") int poolSize,
+                                   @Value("${app.concurrency.pool_margin}") int poolMargin,
+                                   @Value("${app.concurrency.acquire_timeout}") Duration acquireTimeout,
+                                   MeterRegistry meterRegistry ) {
+        int maxRequests = poolSize + poolMargin;
+        this.permits = new Semaphore( maxRequests );
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+
+        // Metriche: richieste in corso e richieste rifiutate per superamento del limite
+        Gauge.builder( "http.server.requests.in_flight", permits, p -> maxRequests - p.availablePermits() )
+                .register( meterRegistry );
+        this.rejected = Counter.builder( "http.server.requests.rejected" )
+                .tag( "reason", "concurrency_limit" )
+                .register( meterRegistry );
+    }
+
+
+    @Override
+    protected boolean shouldNotFilter( HttpServletRequest request ) {
+        return request.getRequestURI().startsWith( request.getContextPath() + "/actuator" );
+    }
+
+    @Override
+    protected void doFilterInternal( HttpServletRequest request,
+                                     HttpServletResponse response,
+                                     FilterChain filterChain ) throws ServletException, IOException {
+        boolean acquired;
+
+        try {
+            acquired = permits.tryAcquire( acquireTimeoutNanos, TimeUnit.NANOSECONDS );
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+
+        if( !acquired ) {
+            rejected.increment();
+
+            response.setStatus( HttpStatus.SERVICE_UNAVAILABLE.value() );
+            response.setHeader( HttpHeaders.RETRY_AFTER, "1" );
+            response.getWriter().write( "Troppe richieste in corso, riprovare." );
+            return;
+        }
+
+        try {
+            filterChain.doFilter( request, response );
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.adi.gestuser.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.task.SimpleAsyncTaskExecutorBuilder;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class TaskExecutorConfiguration {
+
+    /**
+     * APPLICATION TASK EXECUTOR, virtual thread (spring.threads.virtual.enabled=true).
+     * Executor delle richieste MVC asincrone (export in streaming) e degli @Async senza qualificatore;
+     * definito qui perché Spring Boot non lo crea in presenza di altri Executor
+     * @param builder builder configurato da Spring Boot con spring.task.execution.*
+     * @return executor con un virtual thread per task
+     */
+    @Bean(name = { TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME })
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public SimpleAsyncTaskExecutor applicationTaskExecutorVirtualThreads( SimpleAsyncTaskExecutorBuilder builder ) {
+        return builder.build();
+    }
+
+    /**
+     * APPLICATION TASK EXECUTOR, platform thread
+     * @param builder builder configurato da Spring Boot con spring.task.execution.*
+     * @return pool di thread
+     */
+    @Bean(name = { TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME })
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskExecutor applicationTaskExecutor( ThreadPoolTaskExecutorBuilder builder ) {
+        return builder.build();
+    }
+
+    /**
+     * USER IMPORT EXECUTOR, thread dedicati agli import massivi, separati da quelli delle richieste HTTP
+     * @param poolSize numero di import eseguiti in parallelo
+     * @param queueCapacity import in attesa oltre i quali la richiesta viene rifiutata
+     * @return executor degli import
+     */
+    @Bean
+    public ThreadPoolTaskExecutor userImportExecutor( @Value("${app.import.pool_size}") int poolSize,
+                                                      @Value("${app.import.queue_capacity}") int queueCapacity ) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize( poolSize );
+        executor.setMaxPoolSize( poolSize );
+        executor.setQueueCapacity( queueCapacity );
+        executor.setThreadNamePrefix( "user-import-" );
+        executor.setWaitForTasksToCompleteOnShutdown( true );
+        executor.setAwaitTerminationSeconds( 60 );
+        return executor;
+    }
+
+    /**
+     * MAIL TASK EXECUTOR, invii SMTP dei blocchi prenotati da EmailOutboxSender.
+     * Platform thread anche con i virtual thread attivi: Jakarta Mail sincronizza
+     * connessione e invio su SMTP con blocchi synchronized, che bloccherebbero il carrier thread per tutta la durata
+     * dell'I/O. Con la coda piena l'invio avviene nel thread dello scheduler, che rallenta la prenotazione
+     * @param poolSize invii SMTP in parallelo
+     * @param queueCapacity mail in attesa di invio
+     * @return executor delle mail
+     */
+    @Bean
+    public ThreadPoolTaskExecutor mailTaskExecutor( @Value("${app.mail.pool_size}") int poolSize,
+                                                    @Value("${app.mail.queue_capacity}") int queueCapacity ) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize( poolSize );
+        executor.setMaxPoolSize( poolSize );
+        executor.setQueueCapacity( queueCapacity );
+        executor.setThreadNamePrefix( "mail-" );
+        executor.setRejectedExecutionHandler( new ThreadPoolExecutor.CallerRunsPolicy() );
+        executor.setWaitForTasksToCompleteOnShutdown( true );
+        executor.setAwaitTerminationSeconds( 30 );
+        return executor;
+    }
+}
@@ -2,15 +2,26 @@ package com.adi.gestuser.controller;
 
 import com.adi.gestuser.dto.*;
 import com.adi.gestuser.entity.User;
+import com.adi.gestuser.enums.CountMode;
+import com.adi.gestuser.enums.FileFormat;
+import com.adi.gestuser.enums.SearchMode;
 import com.adi.gestuser.service.AuthenticationService;
+import com.adi.gestuser.service.UserExportService;
+import com.adi.gestuser.service.UserImportService;
 import com.adi.gestuser.service.UserService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -20,42 +31,124 @@ public class UserController {
 
     private final UserService userService;
     private final AuthenticationService aut;
+    private final UserExportService userExportService;
+    private final UserImportService userImportService;
 
 
     /*
      * GET USER BY ID
      * Questo metodo permette di ottenere i dati di un utente specificando l'id
+     * Risponde con ETag; con If-None-Match ancora valido restituisce 304 senza caricare l'utente
      * PREAUTHORIZE:
      * Utente con permesso USER_READ e potere più alto sull'utente specificato
      */
     @GetMapping(value = "/{id}")
     @PreAuthorize("hasAnyRole('READ', 'WRITE')")
-    public ResponseEntity<UserDTO> getUserById( @PathVariable("id") Long id ) {
+    public ResponseEntity<UserDTO> getUserById( @PathVariable("id") Long id, WebRequest webRequest ) {
+        String eTag = userService.getUserETag( id );
 
-        return new ResponseEntity<>( userService.getUserDTOById( id ), HttpStatus.OK );
+        if( webRequest.checkNotModified( eTag ) ) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag( eTag ).body( userService.getUserDTOById( id ) );
     }
 
 
     /**
      * GET USER BY EMAIL
-     * @param email email dell'utente
+     * @param email testo da cercare nell'email (lunghezza minima app.search.min_length)
+     * @param searchMode CONTAINS (in qualsiasi punto) o PREFIX (inizio dell'email)
      * @param pageNo numero pagina
      * @param pageSize dimensione pagina
      * @param sortBy campo di ordinamento
      * @param sortDir ascendente o discendente
+     * @param countMode EXACT (count esatto), APPROXIMATE (count in cache) o NONE (nessun count)
      * @return lista utenti paginata
      */
     @GetMapping("/email_contains/{email}")
     @PreAuthorize("hasRole('ROLE_READ')")
     public ResponseEntity<PagedResponseDTO<UserDTO>> getByEmailContains(
             @PathVariable("email") String email,
+            @RequestParam(value = "searchMode", defaultValue = "CONTAINS") SearchMode searchMode,
+            @RequestParam(value = "pageNo", defaultValue = "${app.pagination.default_pageNumber}") int pageNo,
+            @RequestParam(value = "pageSize", defaultValue = "${app.pagination.default_pageSize}") int pageSize,
+            @RequestParam(value = "sortBy", defaultValue = "${app.pagination.default_sortBy}", required = false) String sortBy,
+            @RequestParam(value = "sortOrder", defaultValue = "${app.pagination.default_sortDirection}") String sortDir,
+            @RequestParam(value = "countMode", defaultValue = "${app.pagination.default_countMode}") CountMode countMode
+    ) {
+
+        return new ResponseEntity<>( userService.getByEmailContains( email, searchMode, pageNo, pageSize, sortBy, sortDir, countMode), HttpStatus.OK );
+    }
+
+
+    /**
+     * GET USER BY EMAIL CON CURSORE
+     * Paginazione keyset: la latenza non dipende dalla profondità della pagina
+     * @param email testo da cercare nell'email
+     * @param searchMode CONTAINS o PREFIX
+     * @param cursor cursore restituito dalla pagina precedente, assente per la prima pagina
+     * @param pageSize dimensione pagina
+     * @return lista utenti con cursore della pagina successiva
+     */
+    @GetMapping("/email_contains/{email}/cursor")
+    @PreAuthorize("hasRole('ROLE_READ')")
+    public ResponseEntity<CursorPagedResponseDTO<UserDTO>> getByEmailContainsByCursor(
+            @PathVariable("email") String email,
+            @RequestParam(value = "searchMode", defaultValue = "CONTAINS") SearchMode searchMode,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "pageSize", defaultValue = "${app.pagination.default_pageSize}") int pageSize
+    ) {
+
+        return new ResponseEntity<>( userService.getByEmailContainsByCursor( email, searchMode, cursor, pageSize ), HttpStatus.OK );
+    }
+
+
+    /**
+     * GET USER BY USERNAME
+     * @param username testo da cercare nell'username (lunghezza minima app.search.min_length)
+     * @param searchMode CONTAINS (in qualsiasi punto) o PREFIX (inizio dell'username)
+     * @param pageNo numero pagina
+     * @param pageSize dimensione pagina
+     * @param sortBy campo di ordinamento
+     * @param sortDir ascendente o discendente
+     * @param countMode EXACT (count esatto), APPROXIMATE (count in cache) o NONE (nessun count)
+     * @return lista utenti paginata
+     */
+    @GetMapping("/username_contains/{username}")
+    @PreAuthorize("hasRole('ROLE_READ')")
+    public ResponseEntity<PagedResponseDTO<UserDTO>> getByUsernameContains(
+            @PathVariable("username") String username,
+            @RequestParam(value = "searchMode", defaultValue = "CONTAINS") SearchMode searchMode,
             @RequestParam(value = "pageNo", defaultValue = "${app.pagination.default_pageNumber}") int pageNo,
             @RequestParam(value = "pageSize", defaultValue = "${app.pagination.default_pageSize}") int pageSize,
             @RequestParam(value = "sortBy", defaultValue = "${app.pagination.default_sortBy}", required = false) String sortBy,
-            @RequestParam(value = "sortOrder", defaultValue = "${app.pagination.default_sortDirection}") String sortDir
+            @RequestParam(value = "sortOrder", defaultValue = "${app.pagination.default_sortDirection}") String sortDir,
+            @RequestParam(value = "countMode", defaultValue = "${app.pagination.default_countMode}") CountMode countMode
+    ) {
+
+        return new ResponseEntity<>( userService.getByUsernameContains( username, searchMode, pageNo, pageSize, sortBy, sortDir, countMode), HttpStatus.OK );
+    }
+
+
+    /**
+     * GET USER BY USERNAME CON CURSORE
+     * @param username testo da cercare nell'username
+     * @param searchMode CONTAINS o PREFIX
+     * @param cursor cursore restituito dalla pagina precedente, assente per la prima pagina
+     * @param pageSize dimensione pagina
+     * @return lista utenti con cursore della pagina successiva
+     */
+    @GetMapping("/username_contains/{username}/cursor")
+    @PreAuthorize("hasRole('ROLE_READ')")
+    public ResponseEntity<CursorPagedResponseDTO<UserDTO>> getByUsernameContainsByCursor(
+            @PathVariable("username") String username,
+            @RequestParam(value = "searchMode", defaultValue = "CONTAINS") SearchMode searchMode,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "pageSize", defaultValue = "${app.pagination.default_pageSize}") int pageSize
     ) {
 
-        return new ResponseEntity<>( userService.getByEmailContains( email,pageNo, pageSize, sortBy, sortDir), HttpStatus.OK );
+        return new ResponseEntity<>( userService.getByUsernameContainsByCursor( username, searchMode, cursor, pageSize ), HttpStatus.OK );
     }
 
 
@@ -67,9 +160,9 @@ public class UserController {
     @GetMapping(value = "/findByEmail/{email}")
     @PreAuthorize("hasAnyRole('ROLE_READ', 'ROLE_WRITE')")
     public ResponseEntity<UserDTO> findByEmail( @PathVariable("email") String email) {
-        Optional<User> user = userService.findByEmail( email );
+        Optional<UserDTO> user = userService.findDTOByEmail( email );
 
-        return user.map( value -> new ResponseEntity<>( userService.mapUserToDTO( value ), HttpStatus.OK ) )
+        return user.map( value -> new ResponseEntity<>( value, HttpStatus.OK ) )
                 .orElseGet( () -> new ResponseEntity<>( HttpStatus.NOT_FOUND ) );
 
     }
@@ -107,9 +200,54 @@ public class UserController {
 
 
 
+    /*
+     * GET USERS BY IDS
+     * Questo metodo permette di ottenere più utenti in una sola richiesta (?ids=1,2,3)
+     * Restituisce gli utenti trovati per id e la lista degli id non trovati
+     * PREAUTHORIZE:
+     * Utente con permesso USER_READ
+     */
+    @GetMapping(value = "/batch")
+    @PreAuthorize("hasAnyRole('READ', 'WRITE')")
+    public ResponseEntity<BatchResponseDTO<Long, UserDTO>> getUsersByIds( @RequestParam(value = "ids") List<Long> ids ) {
+
+        return new ResponseEntity<>( userService.getUsersByIds( ids ), HttpStatus.OK );
+    }
+
+
+    /*
+     * GET USERS BY EMAILS
+     * Questo metodo permette di ottenere più utenti per email in una sola richiesta
+     * PREAUTHORIZE:
+     * Utente con permesso USER_READ
+     */
+    @GetMapping(value = "/batch/email")
+    @PreAuthorize("hasAnyRole('READ', 'WRITE')")
+    public ResponseEntity<BatchResponseDTO<String, UserDTO>> getUsersByEmails( @RequestParam(value = "emails") List<String> emails ) {
+
+        return new ResponseEntity<>( userService.getUsersByEmails( emails ), HttpStatus.OK );
+    }
+
+
+    /*
+     * GET USERS BY USERNAMES
+     * Questo metodo permette di ottenere più utenti per username in una sola richiesta
+     * PREAUTHORIZE:
+     * Utente con permesso USER_READ
+     */
+    @GetMapping(value = "/batch/username")
+    @PreAuthorize("hasAnyRole('READ', 'WRITE')")
+    public ResponseEntity<BatchResponseDTO<String, UserDTO>> getUsersByUsernames( @RequestParam(value = "usernames") List<String> usernames ) {
+
+        return new ResponseEntity<>( userService.getUsersByUsernames( usernames ), HttpStatus.OK );
+    }
+
+
+
     /*
      * GET ALL USERS
         * Questo metodo permette di ottenere tutti gli utenti
+        * Il parametro countMode (EXACT, APPROXIMATE, NONE) stabilisce come viene calcolato il totale
         * PREAUTHORIZE:
             * Utente con permesso USER_READ e potere più alto degli utenti richiesti
      */
@@ -120,10 +258,85 @@ public class UserController {
             @RequestParam(value = "pageSize", defaultValue = "${app.pagination.default_pageSize}") int pageSize,
             @RequestParam(value = "sortBy", defaultValue = "${app.pagination.default_sortBy}", required = false) String sortBy,
             @RequestParam(value = "sortOrder", defaultValue = "${app.pagination.default_sortDirection}") String sortDir,
+            @RequestParam(value = "powerOfUser") Integer powerOfUser,
+            @RequestParam(value = "countMode", defaultValue = "${app.pagination.default_countMode}") CountMode countMode
+    ) {
+
+        return new ResponseEntity<>( userService.getAllUsers( pageNo, pageSize, sortBy, sortDir, powerOfUser, countMode ), HttpStatus.OK );
+    }
+
+
+
+    /*
+     * GET ALL USERS CON CURSORE
+     * Questo metodo permette di ottenere tutti gli utenti con paginazione keyset (ordinamento per id decrescente)
+     * PREAUTHORIZE:
+     * Utente con permesso USER_READ e potere più alto degli utenti richiesti
+     */
+    @GetMapping(value = "/all/cursor")
+    @PreAuthorize("hasAnyRole('ROLE_READ', 'ROLE_WRITE')")
+    public ResponseEntity<CursorPagedResponseDTO<UserDTO>> getAllUsersByCursor(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "pageSize", defaultValue = "${app.pagination.default_pageSize}") int pageSize,
             @RequestParam(value = "powerOfUser") Integer powerOfUser
     ) {
 
-        return new ResponseEntity<>( userService.getAllUsers( pageNo, pageSize, sortBy, sortDir, powerOfUser ), HttpStatus.OK );
+        return new ResponseEntity<>( userService.getAllUsersByCursor( cursor, pageSize, powerOfUser ), HttpStatus.OK );
+    }
+
+
+
+    /*
+     * EXPORT USERS
+     * Questo metodo esporta tutti gli utenti (profilo, potere e matrice dei permessi) in CSV o NDJSON
+     * La risposta è in streaming (chunked) direttamente dal COPY di Postgres, senza paginazione
+     * PREAUTHORIZE:
+     * Utente con permesso WRITE
+     */
+    @GetMapping(value = "/export")
+    @PreAuthorize("hasRole('ROLE_WRITE')")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(value = "format", defaultValue = "CSV") FileFormat format
+    ) {
+
+        return ResponseEntity.ok()
+                .contentType( MediaType.parseMediaType( userExportService.getContentType( format ) ) )
+                .header( HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"users." + format.name().toLowerCase() + "\"" )
+                .body( outputStream -> userExportService.exportUsers( format, outputStream ) );
+    }
+
+
+
+    /*
+     * IMPORT USERS
+     * Questo metodo avvia l'import massivo di utenti da un file CSV (email,username) o NDJSON (un SignupDTO per riga)
+     * L'import gira in background: la risposta contiene l'id del job da interrogare con GET /import/{jobId}
+     * PREAUTHORIZE:
+     * Utente con permesso WRITE
+     */
+    @PostMapping(value = "/import")
+    @PreAuthorize("hasRole('ROLE_WRITE')")
+    public ResponseEntity<ImportJobDTO> importUsers(
+            @RequestParam(value = "format", defaultValue = "CSV") FileFormat format,
+            InputStream inputStream
+    ) {
+
+        return new ResponseEntity<>( userImportService.submitImport( format, inputStream ), HttpStatus.ACCEPTED );
+    }
+
+
+    /*
+     * GET IMPORT JOB
+     * Questo metodo restituisce stato, avanzamento ed errori per riga di un import
+     * PREAUTHORIZE:
+     * Utente con permesso WRITE
+     */
+    @GetMapping(value = "/import/{jobId}")
+    @PreAuthorize("hasRole('ROLE_WRITE')")
+    public ResponseEntity<ImportJobDTO> getImportJob( @PathVariable("jobId") String jobId ) {
+
+        return new ResponseEntity<>( userImportService.getImportJob( jobId ), HttpStatus.OK );
     }
 
 
@@ -161,14 +374,17 @@ public class UserController {
      * MODIFICA UTENTE
      * @param id id utente
      * @param userDTO dati utente
+     * @param ifMatch ETag della versione letta dal client, se non più attuale la modifica viene rifiutata con 412
      * @return utente modificato
      */
     @PutMapping("/update/{id}")
     @PreAuthorize("hasRole('ROLE_WRITE')")
     public ResponseEntity<UserDTO> modifyUser( @PathVariable("id") Long id,
-                                               @RequestBody UserDTO userDTO ) {
+                                               @RequestBody UserDTO userDTO,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch ) {
+        UserDTO userModified = userService.modifyUser( id, userDTO, ifMatch );
 
-        return new ResponseEntity<>( userService.modifyUser( id, userDTO ), HttpStatus.OK );
+        return ResponseEntity.ok().eTag( userService.getUserETag( id ) ).body( userModified );
     }
 
 
@@ -1,5 +1,6 @@
 package com.adi.gestuser.controller;
 
+import com.adi.gestuser.dto.BatchResponseDTO;
 import com.adi.gestuser.dto.ChangePasswordDTO;
 import com.adi.gestuser.dto.ProfileDTO;
 import com.adi.gestuser.dto.ProfilePermissionDTO;
@@ -12,7 +13,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.util.List;
 import java.util.Set;
 
 @RestController
@@ -26,26 +29,59 @@ public class UserManagementController {
 
     /**
      * CREATE USER
+     * Con If-None-Match ancora valido restituisce 304 senza leggere i permessi
      * @param profileId id del profilo
      * @return ResponseEntity<UserDTO>
      */
     @GetMapping(value = "/profile_permissions/{profileId}")
     @PreAuthorize("hasAnyRole('READ', 'WRITE')")
-    public ResponseEntity<Set<ProfilePermissionDTO>> findByProfileId( @PathVariable("profileId") Long profileId) {
-        return new ResponseEntity<>( userService.findByProfileIdDTO( profileId ), HttpStatus.OK );
+    public ResponseEntity<Set<ProfilePermissionDTO>> findByProfileId( @PathVariable("profileId") Long profileId,
+                                                                      WebRequest webRequest ) {
+        String eTag = userService.getProfileETag( profileId );
+
+        if( eTag == null ) {
+            return new ResponseEntity<>( userService.findByProfileIdDTO( profileId ), HttpStatus.OK );
+        }
+
+        if( webRequest.checkNotModified( eTag ) ) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag( eTag ).body( userService.findByProfileIdDTO( profileId ) );
+    }
+
+
+    /**
+     * FIND BY PROFILE IDS
+     * Permessi di più profili in una sola richiesta (?profileIds=1,2,3)
+     * @param profileIds id dei profili
+     * @return permessi per profilo e id dei profili inesistenti
+     */
+    @GetMapping(value = "/profile_permissions/batch")
+    @PreAuthorize("hasAnyRole('READ', 'WRITE')")
+    public ResponseEntity<BatchResponseDTO<Long, Set<ProfilePermissionDTO>>> findByProfileIds(
+            @RequestParam(value = "profileIds") List<Long> profileIds ) {
+
+        return new ResponseEntity<>( userService.findByProfileIdsDTO( profileIds ), HttpStatus.OK );
     }
 
 
     /**
      * GET PROFILE BY USER ID
+     * Con If-None-Match ancora valido restituisce 304 senza caricare il profilo
      * @param userId id dell'utente
      * @return ResponseEntity<ProfileDTO>
      */
     @GetMapping("/profile/{userId}")
     @PreAuthorize("hasAnyRole('READ', 'WRITE')")
-    public ResponseEntity<ProfileDTO> getProfileByUserId( @PathVariable("userId") Long userId ) {
+    public ResponseEntity<ProfileDTO> getProfileByUserId( @PathVariable("userId") Long userId, WebRequest webRequest ) {
+        String eTag = userService.getProfileETag( userId );
+
+        if( eTag != null && webRequest.checkNotModified( eTag ) ) {
+            return null;
+        }
 
-        return new ResponseEntity<>( userService.getProfileByUserId( userId ), HttpStatus.OK );
+        return ResponseEntity.ok().eTag( eTag ).body( userService.getProfileByUserId( userId ) );
     }
 
 
@@ -0,0 +1,21 @@
+package com.adi.gestuser.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchResponseDTO<K, V> {
+
+    // Risultati trovati, nello stesso ordine della richiesta
+    private Map<K, V> results;
+
+    // Chiavi richieste e non trovate
+    private List<K> misses;
+
+}
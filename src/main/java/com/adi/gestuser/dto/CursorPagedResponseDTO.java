@@ -0,0 +1,23 @@
+package com.adi.gestuser.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPagedResponseDTO<T> {
+
+    private List<T> content;
+
+    private int pageSize;
+
+    // Cursore opaco da passare alla richiesta successiva, null se non ci sono altre pagine
+    private String nextCursor;
+
+    private boolean last;
+
+}
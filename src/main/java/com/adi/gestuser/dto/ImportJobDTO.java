@@ -0,0 +1,36 @@
+package com.adi.gestuser.dto;
+
+import com.adi.gestuser.enums.ImportJobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportJobDTO {
+
+    private String jobId;
+
+    private ImportJobStatus status;
+
+    private int totalRows;
+
+    private int processedRows;
+
+    private int importedRows;
+
+    private int failedRows;
+
+    private LocalDateTime createdDate;
+
+    private LocalDateTime finishedDate;
+
+    private List<ImportRowErrorDTO> errors;
+
+}
@@ -0,0 +1,20 @@
+package com.adi.gestuser.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportRowErrorDTO {
+
+    // numero della riga nel file, esclusa l'intestazione (parte da 1)
+    private int row;
+
+    private String value;
+
+    // codice di ErrorCodeList
+    private String code;
+
+}
@@ -17,8 +17,10 @@ public class PagedResponseDTO<T> {
 
     private int pageSize;
 
+    // null se la richiesta è stata fatta senza count (CountMode.NONE)
     private Long totalElements;
 
+    // -1 se il totale non è stato calcolato
     private int totalPages;
 
     private boolean last;
@@ -0,0 +1,68 @@
+package com.adi.gestuser.dto;
+
+import com.adi.gestuser.enums.PermissionAction;
+import com.adi.gestuser.enums.PermissionList;
+
+import java.util.Collection;
+
+/**
+ * Matrice dei permessi di un profilo compattata in un int: per ogni permesso quattro bit, uno per azione.
+ * Il bit del permesso P e dell'azione A è P.ordinal() * 4 + A.ordinal(), un flag diverso da 0 accende il bit.
+ * Derivata dalle righe di ProfilePermission, che restano la rappresentazione persistita e quella delle API esistenti.
+ */
+public record PermissionMatrix( int bits ) {
+
+    public static final PermissionMatrix EMPTY = new PermissionMatrix( 0 );
+
+    private static final int ACTIONS = PermissionAction.values().length;
+
+    static {
+        if( PermissionList.values().length * ACTIONS > Integer.SIZE ) {
+            throw new IllegalStateException( "PermissionMatrix: troppi permessi per un int" );
+        }
+    }
+
+
+    /**
+     * OF, costruisce la matrice a partire dai permessi del profilo
+     * @param profilePermissions permessi del profilo
+     * @return matrice dei permessi
+     */
+    public static PermissionMatrix of( Collection<ProfilePermissionDTO> profilePermissions ) {
+        int bits = 0;
+
+        for( ProfilePermissionDTO profilePermission : profilePermissions ) {
+            PermissionList permission = PermissionList.valueOf( profilePermission.getPermissionName() );
+
+            bits |= flag( permission, PermissionAction.READ, profilePermission.getValueRead() );
+            bits |= flag( permission, PermissionAction.CREATE, profilePermission.getValueCreate() );
+            bits |= flag( permission, PermissionAction.UPDATE, profilePermission.getValueUpdate() );
+            bits |= flag( permission, PermissionAction.DELETE, profilePermission.getValueDelete() );
+        }
+
+        return bits == 0 ? EMPTY : new PermissionMatrix( bits );
+    }
+
+    /**
+     * ALLOWS
+     * @param permission permesso
+     * @param action azione
+     * @return true se il profilo ha l'azione sul permesso
+     */
+    public boolean allows( PermissionList permission, PermissionAction action ) {
+        return ( bits & mask( permission, action ) ) != 0;
+    }
+
+    /**
+     * MASK, bit corrispondente alla coppia permesso - azione
+     * @param permission permesso
+     * @param action azione
+     */
+    public static int mask( PermissionList permission, PermissionAction action ) {
+        return 1 << ( permission.ordinal() * ACTIONS + action.ordinal() );
+    }
+
+    private static int flag( PermissionList permission, PermissionAction action, int value ) {
+        return value != 0 ? mask( permission, action ) : 0;
+    }
+}
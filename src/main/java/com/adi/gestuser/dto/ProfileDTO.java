@@ -19,4 +19,7 @@ public class ProfileDTO {
 
  private Set<PermissionDTO> permissions;
 
+ // Permessi del profilo e relative azioni compattati in bit, vedi PermissionMatrix
+ private int permissionMask;
+
 }
@@ -0,0 +1,22 @@
+package com.adi.gestuser.dto;
+
+import com.adi.gestuser.enums.PermissionList;
+
+/**
+ * Proiezione di sola lettura di un permesso di profilo, con l'id del profilo per il raggruppamento.
+ * Evita di idratare ProfilePermission, Profile e User quando servono solo i flag.
+ */
+public record ProfilePermissionProjection(
+        Long profileId,
+        Long id,
+        PermissionList permissionName,
+        int valueRead,
+        int valueCreate,
+        int valueUpdate,
+        int valueDelete
+) {
+
+    public static final String SELECT = "select new com.adi.gestuser.dto.ProfilePermissionProjection(" +
+            "pp.profile.id, pp.id, pe.name, pp.valueRead, pp.valueCreate, pp.valueUpdate, pp.valueDelete) " +
+            "from ProfilePermission pp join pp.permission pe ";
+}
@@ -0,0 +1,26 @@
+package com.adi.gestuser.dto;
+
+import com.adi.gestuser.enums.ProfileList;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proiezione di sola lettura delle credenziali di un utente, usata dal percorso di login.
+ * Contiene solo le colonne necessarie a UserDTOInternal: i permessi del profilo arrivano da ProfilePermissionCache.
+ */
+public record UserCredentialProjection(
+        Long id,
+        String username,
+        String email,
+        String password,
+        boolean isEnabled,
+        boolean isTemporaryPassword,
+        LocalDateTime dateTokenCheck,
+        Long profileId,
+        ProfileList profileName
+) {
+
+    public static final String SELECT = "select new com.adi.gestuser.dto.UserCredentialProjection(" +
+            "u.id, u.username, u.email, u.password, u.isEnabled, u.isTemporaryPassword, u.dateTokenCheck, p.id, p.name) " +
+            "from User u join u.profile p ";
+}
@@ -27,4 +27,7 @@ public class UserDTO {
 
     private Set<ProfilePermissionDTO> profilePermissions;
 
+    // Stessi permessi di profilePermissions compattati in bit, vedi PermissionMatrix
+    private int permissionMask;
+
 }
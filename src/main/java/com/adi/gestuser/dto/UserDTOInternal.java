@@ -27,5 +27,8 @@ public class UserDTOInternal {
 
     private Set<ProfilePermissionDTO> profilePermissions;
 
+    // Stessi permessi di profilePermissions compattati in bit, vedi PermissionMatrix
+    private int permissionMask;
+
     private String password;
 }
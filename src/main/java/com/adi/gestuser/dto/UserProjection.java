@@ -0,0 +1,26 @@
+package com.adi.gestuser.dto;
+
+import com.adi.gestuser.enums.ProfileList;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proiezione di sola lettura di un utente con il suo profilo.
+ * Contiene solo le colonne necessarie a UserDTO: niente password, niente entità gestite.
+ */
+public record UserProjection(
+        Long id,
+        String username,
+        String email,
+        boolean isEnabled,
+        boolean isTemporaryPassword,
+        LocalDateTime dateTokenCheck,
+        Long profileId,
+        ProfileList profileName
+) {
+
+    // Espressione costruttore JPQL comune a tutte le query di UserRepository che restituiscono UserProjection
+    public static final String SELECT = "select new com.adi.gestuser.dto.UserProjection(" +
+            "u.id, u.username, u.email, u.isEnabled, u.isTemporaryPassword, u.dateTokenCheck, p.id, p.name) " +
+            "from User u join u.profile p ";
+}
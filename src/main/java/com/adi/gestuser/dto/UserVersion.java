@@ -0,0 +1,12 @@
+package com.adi.gestuser.dto;
+
+/**
+ * Versioni di utente e profilo, lette senza caricare le entità.
+ * UserDTO contiene dati di entrambi, quindi l'ETag di un utente cambia se cambia uno dei due.
+ */
+public record UserVersion( long userVersion, long profileVersion ) {
+
+    public String toETag() {
+        return userVersion + "." + profileVersion;
+    }
+}
@@ -1,6 +1,7 @@
 package com.adi.gestuser.entity;
 
 import com.adi.gestuser.enums.ApikeyRole;
+import com.adi.gestuser.security.ApiKeyCacheListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -11,6 +12,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "APIKEYS")
+@EntityListeners(ApiKeyCacheListener.class)
 @Getter
 @Setter
 @AllArgsConstructor
@@ -1,6 +1,7 @@
 package com.adi.gestuser.entity;
 
 import com.adi.gestuser.enums.TokenType;
+import com.adi.gestuser.utils.TimeOrderedUuid;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -15,14 +16,24 @@ import java.util.UUID;
 @Setter
 
 @Entity
-@Table(name = "CONFIRMATIONS")
+@Table(name = "CONFIRMATIONS", uniqueConstraints = {
+        @UniqueConstraint(name = Confirmation.UK_TOKEN, columnNames = "token")
+}, indexes = {
+        @Index(name = Confirmation.IDX_USER_TOKEN_TYPE, columnList = "user_id, token_type")
+})
 public class Confirmation {
 
+    public static final String UK_TOKEN = "uk_confirmations_token";
+
+    public static final String IDX_USER_TOKEN_TYPE = "idx_confirmations_user_token_type";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    private String token;
+    // Colonna uuid nativa (16 byte), valori ordinati nel tempo: vedi TimeOrderedUuid
+    @Column(nullable = false)
+    private UUID token;
 
     @Enumerated(EnumType.STRING)
     private TokenType tokenType;
@@ -31,6 +42,9 @@ public class Confirmation {
     @CreatedDate
     private LocalDateTime createdDate;
 
+    // Ultima richiesta servita da questa conferma (creazione o reinvio), usata dalla finestra di coalescenza
+    private LocalDateTime lastRequestedDate;
+
     @ManyToOne(cascade = { CascadeType.PERSIST, CascadeType.MERGE, CascadeType.REFRESH, CascadeType.DETACH }, optional = false, targetEntity = User.class)
     @JoinColumn(nullable = false, name = "user_id")
     private User user;
@@ -38,6 +52,7 @@ public class Confirmation {
     public Confirmation( User user) {
         this.user = user;
         this.createdDate = LocalDateTime.now();
-        this.token = UUID.randomUUID().toString();
+        this.lastRequestedDate = this.createdDate;
+        this.token = TimeOrderedUuid.generate();
     }
 }
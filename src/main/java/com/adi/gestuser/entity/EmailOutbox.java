@@ -0,0 +1,76 @@
+package com.adi.gestuser.entity;
+
+import com.adi.gestuser.enums.EmailOutboxStatus;
+import com.adi.gestuser.enums.EmailType;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Mail da inviare, scritta nella stessa transazione della modifica che la genera
+ * e spedita in background da EmailOutboxSender. La riga viene cancellata dopo l'invio.
+ * Per le mail con password temporanea viene salvato solo l'utente: la password viene generata
+ * e assegnata da EmailOutboxSender al momento dell'invio, e non passa mai dal database in chiaro
+ */
+@NoArgsConstructor
+@Getter
+@Setter
+
+@Entity
+@Table(name = "EMAIL_OUTBOX", indexes = {
+        @Index(name = EmailOutbox.IDX_STATUS_NEXT_ATTEMPT, columnList = "status, next_attempt_at")
+})
+public class EmailOutbox {
+
+    public static final String IDX_STATUS_NEXT_ATTEMPT = "idx_email_outbox_status_next_attempt";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private EmailType emailType;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    private String name;
+
+    private String token;
+
+    // Utente a cui assegnare la password temporanea (VERIFY, RESEND)
+    private Long userId;
+
+    private String subject;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private EmailOutboxStatus status;
+
+    private int attempts;
+
+    @Column(nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    public EmailOutbox( EmailType emailType, Long userId, String name, String recipient, String token, String subject ) {
+        this.emailType = emailType;
+        this.userId = userId;
+        this.name = name;
+        this.recipient = recipient;
+        this.token = token;
+        this.subject = subject;
+        this.status = EmailOutboxStatus.PENDING;
+        this.createdAt = Instant.now();
+        this.nextAttemptAt = this.createdAt;
+    }
+}
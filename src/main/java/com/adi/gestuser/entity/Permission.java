@@ -6,6 +6,8 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.Set;
 
@@ -15,6 +17,7 @@ import java.util.Set;
 @NoArgsConstructor
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = "permissions")
 @Table(name = "PERMISSIONS")
 public class Permission {
     @Id
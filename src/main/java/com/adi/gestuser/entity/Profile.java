@@ -1,11 +1,15 @@
 package com.adi.gestuser.entity;
 
+import com.adi.gestuser.cache.UserCredentialCacheListener;
 import com.adi.gestuser.enums.ProfileList;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.util.Set;
 
@@ -14,13 +18,36 @@ import java.util.Set;
 @Getter
 @Setter
 @Entity
+@EntityListeners(UserCredentialCacheListener.class)
+@NamedEntityGraph(name = Profile.GRAPH_PERMISSIONS,
+        attributeNodes = {
+                @NamedAttributeNode("user"),
+                @NamedAttributeNode(value = "profilePermissions", subgraph = "profilePermissions")
+        },
+        subgraphs = @NamedSubgraph(name = "profilePermissions", attributeNodes = @NamedAttributeNode("permission")))
 @Table(name = "PROFILES")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "profiles")
 public class Profile {
+
+    // Piano di caricamento profilo - utente - permessi del profilo - permesso, in un solo statement
+    public static final String GRAPH_PERMISSIONS = "Profile.permissions";
+
+    // Ruolo della collezione profilePermissions, per invalidarla nella cache di secondo livello
+    public static final String PERMISSIONS_ROLE = "com.adi.gestuser.entity.Profile.profilePermissions";
+
     @Id
     private Long id;
 
+    // Versione per il lock ottimistico e per l'ETag, incrementata anche ad ogni modifica dei permessi
+    // del profilo (lock OPTIMISTIC_FORCE_INCREMENT di chi scrive i permessi)
+    @Version
+    @ColumnDefault("0")
+    private long version;
+
+    // Lazy: l'utente non è nella cache di secondo livello, un profilo letto dalla cache non deve andare al database
+    // per caricarlo (l'id è quello del profilo; il grafo GRAPH_PERMISSIONS lo carica quando serve)
     @MapsId
-    @OneToOne(cascade = CascadeType.ALL, orphanRemoval = true)
+    @OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
     @JoinColumn(name = "user_id")
     private User user;
 
@@ -32,6 +59,7 @@ public class Profile {
     private int power;
 
     @OneToMany(mappedBy = "profile", cascade = CascadeType.ALL)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "profile-permission-collections")
     private Set<ProfilePermission> profilePermissions;
 
 
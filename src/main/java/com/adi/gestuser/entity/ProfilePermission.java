@@ -1,7 +1,10 @@
 package com.adi.gestuser.entity;
 
+import com.adi.gestuser.cache.ProfilePermissionCacheListener;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Getter
 @Setter
@@ -10,6 +13,8 @@ import lombok.*;
 @Builder
 @Entity
 @Table(name = "PROFILE_PERMISSIONS")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "profile-permissions")
+@EntityListeners(ProfilePermissionCacheListener.class)
 public class ProfilePermission {
 
     @Id
@@ -1,9 +1,11 @@
 package com.adi.gestuser.entity;
 
+import com.adi.gestuser.cache.UserCredentialCacheListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 import org.springframework.data.annotation.CreatedDate;
 
 import java.time.LocalDateTime;
@@ -14,18 +16,45 @@ import java.util.List;
 @AllArgsConstructor
 
 @Entity
-@Table(name = "USERS")
+@EntityListeners(UserCredentialCacheListener.class)
+@NamedEntityGraph(name = User.GRAPH_PROFILE_PERMISSIONS,
+        attributeNodes = @NamedAttributeNode(value = "profile", subgraph = "profile"),
+        subgraphs = {
+                @NamedSubgraph(name = "profile",
+                        attributeNodes = @NamedAttributeNode(value = "profilePermissions", subgraph = "profilePermissions")),
+                @NamedSubgraph(name = "profilePermissions", attributeNodes = @NamedAttributeNode("permission"))
+        })
+@Table(name = "USERS", uniqueConstraints = {
+        @UniqueConstraint(name = User.UK_USERNAME, columnNames = "username"),
+        @UniqueConstraint(name = User.UK_EMAIL, columnNames = "email")
+})
 public class User {
-    // todo: possibilità di aggiungere @Version
+
+    // Nomi dei vincoli di unicità, usati dalla migrazione db/constraints.sql per allineare i vincoli esistenti
+    public static final String UK_USERNAME = "uk_users_username";
+
+    public static final String UK_EMAIL = "uk_users_email";
+
+    // Password in attesa della mail con la password temporanea: non è un hash bcrypt, BCryptPasswordEncoder.matches
+    // la rifiuta per qualsiasi password. EmailOutboxSender la sostituisce al momento dell'invio
+    public static final String PENDING_PASSWORD = "{pending}";
+
+    // Piano di caricamento utente - profilo - permessi del profilo - permesso, in un solo statement
+    public static final String GRAPH_PROFILE_PERMISSIONS = "User.profilePermissions";
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "username", nullable = false, unique = true)
+    // Versione per il lock ottimistico e per l'ETag delle risorse utente
+    @Version
+    @ColumnDefault("0")
+    private long version;
+
+    @Column(name = "username", nullable = false)
     private String username;
 
-    @Column(name = "email", nullable = false, unique = true)
+    @Column(name = "email", nullable = false)
     private String email;
 
     @Column(name = "password", nullable = false)
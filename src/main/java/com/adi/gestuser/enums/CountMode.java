@@ -0,0 +1,14 @@
+package com.adi.gestuser.enums;
+
+public enum CountMode {
+
+    // count esatto, una query di conteggio ad ogni richiesta
+    EXACT,
+
+    // count letto da una cache a vita breve
+    APPROXIMATE,
+
+    // nessun count, si sa solo se esiste una pagina successiva
+    NONE
+
+}
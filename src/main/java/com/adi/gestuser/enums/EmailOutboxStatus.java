@@ -0,0 +1,11 @@
+package com.adi.gestuser.enums;
+
+public enum EmailOutboxStatus {
+
+    // in attesa di invio o di un nuovo tentativo
+    PENDING,
+
+    // tentativi esauriti, non viene più inviata
+    FAILED
+
+}
@@ -0,0 +1,14 @@
+package com.adi.gestuser.enums;
+
+public enum EmailType {
+
+    // verifica account con password temporanea (registrazione, cambio email, import)
+    VERIFY,
+
+    // nuova verifica con password ripristinata
+    RESEND,
+
+    // recupero password
+    RECOVERY
+
+}
@@ -0,0 +1,11 @@
+package com.adi.gestuser.enums;
+
+public enum FileFormat {
+
+    // una riga CSV per utente, con intestazione
+    CSV,
+
+    // un oggetto JSON per riga
+    NDJSON
+
+}
@@ -0,0 +1,17 @@
+package com.adi.gestuser.enums;
+
+public enum ImportJobStatus {
+
+    // in coda, in attesa di un thread libero
+    PENDING,
+
+    // righe in elaborazione
+    RUNNING,
+
+    // tutte le righe elaborate, eventuali errori sono per riga
+    COMPLETED,
+
+    // interrotto da un errore non legato alle singole righe
+    FAILED
+
+}
@@ -0,0 +1,14 @@
+package com.adi.gestuser.enums;
+
+// L'ordine determina la posizione del bit in PermissionMatrix: non riordinare
+public enum PermissionAction {
+
+    READ,
+
+    CREATE,
+
+    UPDATE,
+
+    DELETE
+
+}
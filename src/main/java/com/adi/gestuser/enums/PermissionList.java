@@ -1,5 +1,6 @@
 package com.adi.gestuser.enums;
 
+// L'ordine determina la posizione dei bit in PermissionMatrix: i nuovi permessi vanno aggiunti in fondo
 public enum PermissionList {
 
     USER,
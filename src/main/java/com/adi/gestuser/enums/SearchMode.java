@@ -0,0 +1,11 @@
+package com.adi.gestuser.enums;
+
+public enum SearchMode {
+
+    // il testo può trovarsi in qualsiasi punto (indice trigram)
+    CONTAINS,
+
+    // il valore deve iniziare con il testo (indice text_pattern_ops)
+    PREFIX
+
+}
@@ -41,5 +41,26 @@ public class ErrorCodeList {
     public static final String UPPERCASEERROR = "UPPERCASEERROR";
 
     public static final String INVALID_TOKEN = "INVALID_TOKEN";
+
+    // CURSORE DI PAGINAZIONE NON VALIDO O MANOMESSO
+    public static final String INVALID_CURSOR = "INVALID_CURSOR";
+
+    // TESTO DI RICERCA PIU' CORTO DELLA LUNGHEZZA MINIMA
+    public static final String SEARCHTOOSHORT = "SEARCHTOOSHORT";
+
+    // ERRORE DURANTE L'ESPORTAZIONE IN STREAMING DEGLI UTENTI
+    public static final String EXPORTERROR = "EXPORTERROR";
+
+    // FILE DI IMPORT CON PIU' RIGHE DEL MASSIMO CONSENTITO O ILLEGGIBILE
+    public static final String IMPORTERROR = "IMPORTERROR";
+
+    // TROPPI IMPORT IN CORSO, RIPROVARE PIU' TARDI
+    public static final String IMPORTBUSY = "IMPORTBUSY";
+
+    // LA RISORSA E' STATA MODIFICATA NEL FRATTEMPO (IF-MATCH O VERSIONE NON CORRISPONDENTE)
+    public static final String VERSIONMISMATCH = "VERSIONMISMATCH";
+
+    // TROPPE CHIAVI IN UNA RICHIESTA MULTIPLA
+    public static final String BATCHTOOLARGE = "BATCHTOOLARGE";
     ;
 }
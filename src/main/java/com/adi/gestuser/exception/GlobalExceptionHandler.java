@@ -8,6 +8,7 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -55,6 +56,14 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
                 return new ResponseEntity<>( errorDetailsDto, HttpStatus.BAD_REQUEST );
             }
 
+            // ECCEZIONE DI LOCK OTTIMISTICO: LA RISORSA E' STATA MODIFICATA DA UN'ALTRA RICHIESTA
+            case ObjectOptimisticLockingFailureException optimisticLockingFailureException -> {
+                ErrorDetailsDTO errorDetailsDto = new ErrorDetailsDTO( new Date(), ErrorCodeList.VERSIONMISMATCH,
+                        webRequest.getDescription( false ) );
+
+                return new ResponseEntity<>( errorDetailsDto, HttpStatus.PRECONDITION_FAILED );
+            }
+
             // ECCEZIONE DI VIOLAZIONE DELL'INTEGRITÀ DEI DATI
             case DataIntegrityViolationException dataIntegrityViolationException -> {
                 Throwable rootCause = dataIntegrityViolationException.getRootCause();
@@ -2,10 +2,17 @@ package com.adi.gestuser.repository;
 
 import com.adi.gestuser.entity.ApiKey;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface ApiKeyRepository extends JpaRepository<ApiKey, String> {
 
     ApiKey findByApikey(String apikey);
+
+    // Solo i valori delle API key, per l'insieme delle chiavi esistenti di ApiKeyCache
+    @Query("select a.apikey from ApiKey a")
+    List<String> findAllApikeys();
 }
@@ -6,16 +6,20 @@ import com.adi.gestuser.enums.TokenType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.Set;
+import java.util.UUID;
 
 @Repository
 public interface ConfirmationRepository extends JpaRepository<Confirmation, Long> {
 
-    Confirmation findByToken( String token);
+    Confirmation findByToken( UUID token);
 
     Set<Confirmation> findByTokenTypeAndUserId( TokenType tokenType, Long userId);
 
     Set<Confirmation> findByUserId( Long userId);
 
     boolean existsConfirmationByUser( User user);
+
+    boolean existsByUserIdAndTokenTypeAndLastRequestedDateAfter( Long userId, TokenType tokenType, LocalDateTime lastRequestedDate );
 }
@@ -0,0 +1,9 @@
+package com.adi.gestuser.repository;
+
+import com.adi.gestuser.entity.EmailOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+}
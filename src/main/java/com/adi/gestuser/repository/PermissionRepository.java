@@ -2,7 +2,10 @@ package com.adi.gestuser.repository;
 
 import com.adi.gestuser.entity.Permission;
 import com.adi.gestuser.enums.PermissionList;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -11,6 +14,7 @@ import java.util.Optional;
 public interface PermissionRepository extends JpaRepository<Permission, Long> {
 
 
+    // Risultato nella query cache, l'entità nella cache di secondo livello: le letture ripetute non vanno al database
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<Permission> findByName( PermissionList name);
 }
-
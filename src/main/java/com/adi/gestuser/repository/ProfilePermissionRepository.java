@@ -1,13 +1,25 @@
 package com.adi.gestuser.repository;
 
+import com.adi.gestuser.dto.ProfilePermissionProjection;
 import com.adi.gestuser.entity.ProfilePermission;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 @Repository
 public interface ProfilePermissionRepository extends JpaRepository<ProfilePermission,Long> {
 
     Set<ProfilePermission> findByProfileId( Long userId);
+
+    // Permessi di uno o più profili in una sola query, proiettati sulle sole colonne del DTO
+    @Query(ProfilePermissionProjection.SELECT + "where pp.profile.id = :profileId")
+    List<ProfilePermissionProjection> findProjectionsByProfileId( @Param("profileId") Long profileId);
+
+    @Query(ProfilePermissionProjection.SELECT + "where pp.profile.id in :profileIds")
+    List<ProfilePermissionProjection> findProjectionsByProfileIdIn( @Param("profileIds") Collection<Long> profileIds);
 }
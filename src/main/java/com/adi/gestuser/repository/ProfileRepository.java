@@ -2,11 +2,31 @@ package com.adi.gestuser.repository;
 
 import com.adi.gestuser.entity.Profile;
 import com.adi.gestuser.entity.User;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface ProfileRepository extends JpaRepository<Profile, User> {
 
     Profile findByUserId( Long userId);
+
+    // Profilo con utente e permessi, per la lettura del profilo di un utente
+    @EntityGraph(Profile.GRAPH_PERMISSIONS)
+    @Query("select p from Profile p where p.id = :userId")
+    Optional<Profile> findWithPermissionsByUserId( @Param("userId") Long userId);
+
+    // Solo la versione, per l'ETag del profilo e dei suoi permessi
+    @Query("select p.version from Profile p where p.id = :id")
+    Optional<Long> findVersionById( @Param("id") Long id);
+
+    // Id dei profili esistenti tra quelli richiesti
+    @Query("select p.id from Profile p where p.id in :ids")
+    List<Long> findIdsByIdIn( @Param("ids") Collection<Long> ids);
 }
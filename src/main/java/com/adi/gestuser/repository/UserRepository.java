@@ -1,13 +1,24 @@
 package com.adi.gestuser.repository;
 
+import com.adi.gestuser.dto.UserCredentialProjection;
+import com.adi.gestuser.dto.UserProjection;
+import com.adi.gestuser.dto.UserVersion;
 import com.adi.gestuser.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 @Repository
 public interface UserRepository extends JpaRepository<User,Long>, JpaSpecificationExecutor<User> {
@@ -16,6 +27,11 @@ public interface UserRepository extends JpaRepository<User,Long>, JpaSpecificati
 
     Optional<User> findByUsernameOrEmail( String username, String email);
 
+    // Utente con profilo e permessi, per le letture del singolo utente
+    @EntityGraph(User.GRAPH_PROFILE_PERMISSIONS)
+    @Query("select u from User u where u.id = :id")
+    Optional<User> findWithProfilePermissionsById( @Param("id") Long id);
+
     Boolean existsByUsername(String username);
 
     Boolean existsByEmail(String email);
@@ -28,5 +44,114 @@ public interface UserRepository extends JpaRepository<User,Long>, JpaSpecificati
 
     Page<User>findByEmailContainsIgnoreCaseAndProfilePowerGreaterThanEqual( Pageable page, String email, int power);
 
-    Page<User>findByEmailContainsIgnoreCase( Pageable page, String email);
+    long countByProfilePowerGreaterThanEqual( int power);
+
+
+    //**** SIGNUP ****//
+
+    // Utente, profilo e conferma con un solo statement: l'unicità di username ed email è decisa dai vincoli
+    // del database nello stesso insert; in conflitto nessuna riga viene inserita e il risultato è null
+    @Query(value = "with new_user as ( " +
+            "    insert into \"users\" (username, email, password, is_enabled, is_temporary_password, date_token_check) " +
+            "    values (:username, :email, :password, false, true, :createdDate) " +
+            "    on conflict do nothing " +
+            "    returning id " +
+            "), new_profile as ( " +
+            "    insert into \"profiles\" (user_id, name, power) " +
+            "    select id, :profileName, :power from new_user " +
+            "), new_confirmation as ( " +
+            "    insert into \"confirmations\" (token, token_type, created_date, last_requested_date, user_id) " +
+            "    select :token, :tokenType, :createdDate, :createdDate, id from new_user " +
+            ") " +
+            "select id from new_user",
+            nativeQuery = true)
+    Long insertSignup( @Param("username") String username,
+                       @Param("email") String email,
+                       @Param("password") String password,
+                       @Param("profileName") String profileName,
+                       @Param("power") int power,
+                       @Param("token") UUID token,
+                       @Param("tokenType") String tokenType,
+                       @Param("createdDate") LocalDateTime createdDate);
+
+
+    //**** LOCK ****//
+
+    // Lock della riga utente fino al commit: serializza tra i nodi le richieste di conferma dello stesso utente
+    @Query(value = "select id from \"users\" where id = :id for no key update", nativeQuery = true)
+    Optional<Long> lockById( @Param("id") Long id);
+
+
+    //**** VERSIONI (ETAG) ****//
+
+    @Query("select new com.adi.gestuser.dto.UserVersion(u.version, p.version) from User u join u.profile p where u.id = :id")
+    Optional<UserVersion> findVersionById( @Param("id") Long id);
+
+
+    //**** PROIEZIONI DI SOLA LETTURA ****//
+    // Selezionano solo le colonne di UserProjection, senza idratare entità User/Profile
+
+    @Query(UserProjection.SELECT + "where u.id = :id")
+    Optional<UserProjection> findProjectionById( @Param("id") Long id);
+
+    @Query(UserProjection.SELECT + "where u.email = :email")
+    Optional<UserProjection> findProjectionByEmail( @Param("email") String email);
+
+    // Percorso di login: una sola query sugli indici unici di username ed email
+    @Query(UserCredentialProjection.SELECT + "where u.username = :value or u.email = :value")
+    Optional<UserCredentialProjection> findCredentialsByUsernameOrEmail( @Param("value") String value);
+
+    @Query(value = UserProjection.SELECT + "where p.power >= :power",
+            countQuery = "select count(u) from User u join u.profile p where p.power >= :power")
+    Page<UserProjection> findProjectionsByPower( @Param("power") int power, Pageable page);
+
+    // Richieste multiple: una sola query IN per tutte le chiavi
+    @Query(UserProjection.SELECT + "where u.id in :ids")
+    List<UserProjection> findProjectionsByIdIn( @Param("ids") Collection<Long> ids);
+
+    @Query(UserProjection.SELECT + "where u.email in :emails")
+    List<UserProjection> findProjectionsByEmailIn( @Param("emails") Collection<String> emails);
+
+    @Query(UserProjection.SELECT + "where u.username in :usernames")
+    List<UserProjection> findProjectionsByUsernameIn( @Param("usernames") Collection<String> usernames);
+
+    // Pagine senza query di conteggio
+    @Query(UserProjection.SELECT + "where p.power >= :power")
+    Slice<UserProjection> findProjectionSliceByPower( @Param("power") int power, Pageable page);
+
+    // Paginazione a cursore (keyset): seek sulla chiave primaria, senza offset e senza count
+    @Query(UserProjection.SELECT + "where p.power >= :power and u.id < :lastId order by u.id desc")
+    List<UserProjection> findProjectionsByPowerAfterId( @Param("power") int power, @Param("lastId") Long lastId, Pageable page);
+
+
+    //**** RICERCA TESTUALE ****//
+    // Il pattern arriva già in minuscolo e con i caratteri speciali di LIKE escapati:
+    // '%testo%' usa gli indici GIN pg_trgm su lower(email) / lower(username),
+    // 'testo%' usa gli indici text_pattern_ops (vedi db/search-indexes.sql)
+
+    @Query(value = UserProjection.SELECT + "where lower(u.email) like :pattern escape '\\'",
+            countQuery = "select count(u) from User u where lower(u.email) like :pattern escape '\\'")
+    Page<UserProjection> searchByEmail( @Param("pattern") String pattern, Pageable page);
+
+    @Query(UserProjection.SELECT + "where lower(u.email) like :pattern escape '\\'")
+    Slice<UserProjection> searchSliceByEmail( @Param("pattern") String pattern, Pageable page);
+
+    @Query("select count(u) from User u where lower(u.email) like :pattern escape '\\'")
+    long countSearchByEmail( @Param("pattern") String pattern);
+
+    @Query(UserProjection.SELECT + "where lower(u.email) like :pattern escape '\\' and u.id < :lastId order by u.id desc")
+    List<UserProjection> searchByEmailAfterId( @Param("pattern") String pattern, @Param("lastId") Long lastId, Pageable page);
+
+    @Query(value = UserProjection.SELECT + "where lower(u.username) like :pattern escape '\\'",
+            countQuery = "select count(u) from User u where lower(u.username) like :pattern escape '\\'")
+    Page<UserProjection> searchByUsername( @Param("pattern") String pattern, Pageable page);
+
+    @Query(UserProjection.SELECT + "where lower(u.username) like :pattern escape '\\'")
+    Slice<UserProjection> searchSliceByUsername( @Param("pattern") String pattern, Pageable page);
+
+    @Query("select count(u) from User u where lower(u.username) like :pattern escape '\\'")
+    long countSearchByUsername( @Param("pattern") String pattern);
+
+    @Query(UserProjection.SELECT + "where lower(u.username) like :pattern escape '\\' and u.id < :lastId order by u.id desc")
+    List<UserProjection> searchByUsernameAfterId( @Param("pattern") String pattern, @Param("lastId") Long lastId, Pageable page);
 }
@@ -1,29 +1,21 @@
 package com.adi.gestuser.security;
 
-import com.adi.gestuser.entity.ApiKey;
-import com.adi.gestuser.repository.ApiKeyRepository;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 
 @Component
 @RequiredArgsConstructor
 public class ApiKeyAuthFilter extends OncePerRequestFilter {
     private static final String API_KEY_HEADER_NAME = "X-API-KEY";
-    private final ApiKeyRepository apiKeyRepository;
+    private final ApiKeyCache apiKeyCache;
 
 
     @Override
@@ -34,25 +26,14 @@ public class ApiKeyAuthFilter extends OncePerRequestFilter {
         String apiKeyValue = request.getHeader( API_KEY_HEADER_NAME );
 
         if( apiKeyValue != null && !apiKeyValue.isEmpty() ) {
-            ApiKey apiKey = apiKeyRepository.findByApikey( apiKeyValue );
+            // Risolve l'API key dalla cache, il database viene interrogato solo in caso di miss
+            ApiKeyCache.CachedApiKey cachedApiKey = apiKeyCache.resolve( apiKeyValue );
 
-            if( apiKey != null ) {
+            if( cachedApiKey != null ) {
                 // Verifica se l'API key è scaduta
-                if( apiKey.getExpireDate().isAfter( LocalDateTime.now() ) ) {
-                    // Crea le autorità basate sul ruolo
-                    List<GrantedAuthority> authorities = new ArrayList<>();
-                    authorities.add( new SimpleGrantedAuthority( "ROLE_" + apiKey.getApikeyRole().name() ) );
-
-                    // Crea l'oggetto Authentication
-                    Authentication authentication = new ApiKeyAuthenticationToken(
-                            apiKeyValue,
-                            null,
-                            authorities,
-                            apiKey
-                    );
-
-                    // Imposta l'autenticazione nel contesto di sicurezza
-                    SecurityContextHolder.getContext().setAuthentication( authentication );
+                if( !cachedApiKey.isExpired() ) {
+                    // Imposta l'autenticazione pre-costruita nel contesto di sicurezza
+                    SecurityContextHolder.getContext().setAuthentication( cachedApiKey.authentication() );
 
                     // Procedi con la catena dei filtri
                     filterChain.doFilter( request, response );
@@ -0,0 +1,236 @@
+package com.adi.gestuser.security;
+
+import com.adi.gestuser.entity.ApiKey;
+import com.adi.gestuser.enums.ApikeyRole;
+import com.adi.gestuser.repository.ApiKeyRepository;
+import com.adi.gestuser.cache.CacheLoading;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cache in memoria delle API key risolte.
+ * Ogni voce contiene il token di autenticazione già costruito e viene rimossa
+ * alla scadenza dell'API key oppure allo scadere del TTL, quale dei due arrivi prima.
+ * L'insieme di tutte le API key esistenti è tenuto in memoria: una chiave che non ne fa parte viene rifiutata
+ * senza interrogare il database, per quante chiavi diverse vengano tentate. L'insieme viene ricaricato dopo il
+ * commit di ogni scrittura di un'API key e ogni refresh_interval, per le scritture fatte da altre istanze.
+ */
+@Component
+public class ApiKeyCache implements SchedulingConfigurer {
+
+    private static final Logger logger = LoggerFactory.getLogger( ApiKeyCache.class );
+
+    // Autorità immutabili pre-costruite per ogni ruolo, condivise da tutti i token
+    private static final Map<ApikeyRole, List<GrantedAuthority>> AUTHORITIES_BY_ROLE = buildAuthorities();
+
+    private final ApiKeyRepository apiKeyRepository;
+
+    private final AsyncCache<String, CachedApiKey> cache;
+
+    // API key esistenti, con il numero della lettura che le ha prodotte
+    private final AtomicReference<KnownKeys> knownKeys = new AtomicReference<>( KnownKeys.NOT_LOADED );
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final Duration refreshInterval;
+
+    public ApiKeyCache( ApiKeyRepository apiKeyRepository,
+                        @Value("${app.apikey.cache.max_size}") long maxSize,
+                        @Value("${app.apikey.cache.ttl}") Duration ttl,
+                        @Value("${app.apikey.cache.refresh_interval}") Duration refreshInterval ) {
+        this.apiKeyRepository = apiKeyRepository;
+        this.refreshInterval = refreshInterval;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize( maxSize )
+                .expireAfter( new ApiKeyExpiry( ttl ) )
+                .recordStats()
+                .buildAsync();
+    }
+
+
+    @Override
+    public void configureTasks( ScheduledTaskRegistrar taskRegistrar ) {
+        taskRegistrar.addFixedDelayTask( this::refreshQuietly, refreshInterval );
+    }
+
+
+    /**
+     * RESOLVE, restituisce l'API key dalla cache o, in caso di miss, dal database
+     * @param apikey valore dell'header X-API-KEY
+     * @return la voce in cache, null se l'API key non esiste
+     */
+    public CachedApiKey resolve( String apikey ) {
+        // API key inesistente: rifiutata senza interrogare il database
+        if( !knownKeys().contains( apikey ) ) {
+            rejected.incrementAndGet();
+            return null;
+        }
+
+        return CacheLoading.getOrLoad( cache, apikey, this::load );
+    }
+
+    /**
+     * INVALIDATE, rimuove una singola API key dalla cache e ricarica l'insieme delle chiavi esistenti.
+     * Va chiamato dopo il commit di ogni scrittura di un'API key
+     * @param apikey valore dell'API key
+     */
+    public void invalidate( String apikey ) {
+        cache.synchronous().invalidate( apikey );
+        refreshQuietly();
+    }
+
+    /**
+     * REFRESH, ricarica dal database l'insieme delle API key esistenti.
+     * Una lettura iniziata prima di un'altra e terminata dopo non sovrascrive il risultato più recente
+     * @return API key esistenti
+     */
+    public Set<String> refresh() {
+        long generation = refreshes.incrementAndGet();
+        KnownKeys loaded = new KnownKeys( generation, Set.copyOf( apiKeyRepository.findAllApikeys() ) );
+
+        return knownKeys.accumulateAndGet( loaded,
+                ( current, candidate ) -> candidate.generation() > current.generation() ? candidate : current ).keys();
+    }
+
+    /**
+     * STATS, contatori di hit, miss ed eviction
+     * @return statistiche della cache
+     */
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * REJECTED COUNT, API key inesistenti rifiutate in memoria
+     * @return numero di richieste rifiutate
+     */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * SIZE, numero stimato di voci in cache
+     * @return numero di voci
+     */
+    public long size() {
+        return cache.synchronous().estimatedSize();
+    }
+
+
+    //**** METODI INTERNI ****//
+
+    private Set<String> knownKeys() {
+        KnownKeys current = knownKeys.get();
+        return current == KnownKeys.NOT_LOADED ? refresh() : current.keys();
+    }
+
+    // Errore di lettura: l'insieme precedente resta valido fino al tentativo successivo
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch( RuntimeException e ) {
+            logger.warn( "Aggiornamento delle API key non riuscito: {}", e.getMessage() );
+        }
+    }
+
+    private CachedApiKey load( String apikey ) {
+        ApiKey apiKey = apiKeyRepository.findByApikey( apikey );
+
+        if( apiKey == null ) {
+            return null;
+        }
+
+        ApiKeyAuthenticationToken authentication = new ApiKeyAuthenticationToken(
+                apikey,
+                null,
+                AUTHORITIES_BY_ROLE.get( apiKey.getApikeyRole() ),
+                apiKey
+        );
+
+        return new CachedApiKey( apiKey, authentication );
+    }
+
+    private static Map<ApikeyRole, List<GrantedAuthority>> buildAuthorities() {
+        Map<ApikeyRole, List<GrantedAuthority>> authorities = new EnumMap<>( ApikeyRole.class );
+
+        for( ApikeyRole role : ApikeyRole.values() ) {
+            authorities.put( role, List.of( new SimpleGrantedAuthority( "ROLE_" + role.name() ) ) );
+        }
+
+        return Collections.unmodifiableMap( authorities );
+    }
+
+
+    /**
+     * Voce della cache: l'API key e il token di autenticazione immutabile associato
+     * @param apiKey entità API key
+     * @param authentication token già costruito per il ruolo dell'API key
+     */
+    public record CachedApiKey( ApiKey apiKey, ApiKeyAuthenticationToken authentication ) {
+
+        public boolean isExpired() {
+            return !apiKey.getExpireDate().isAfter( LocalDateTime.now() );
+        }
+    }
+
+
+    /**
+     * Insieme delle API key esistenti e numero della lettura che lo ha prodotto
+     * @param generation numero progressivo della lettura, 0 se non ancora caricato
+     * @param keys valori delle API key
+     */
+    private record KnownKeys( long generation, Set<String> keys ) {
+
+        private static final KnownKeys NOT_LOADED = new KnownKeys( 0, Set.of() );
+    }
+
+
+    /**
+     * Durata di una voce: il minimo tra il TTL configurato e il tempo residuo prima della scadenza dell'API key
+     */
+    private record ApiKeyExpiry( Duration ttl ) implements Expiry<String, CachedApiKey> {
+
+        @Override
+        public long expireAfterCreate( String key, CachedApiKey value, long currentTime ) {
+            Duration untilExpire = Duration.between( LocalDateTime.now(), value.apiKey().getExpireDate() );
+
+            if( untilExpire.isNegative() ) {
+                return 0L;
+            }
+
+            return Math.min( ttl.toNanos(), untilExpire.toNanos() );
+        }
+
+        @Override
+        public long expireAfterUpdate( String key, CachedApiKey value, long currentTime, long currentDuration ) {
+            return expireAfterCreate( key, value, currentTime );
+        }
+
+        @Override
+        public long expireAfterRead( String key, CachedApiKey value, long currentTime, long currentDuration ) {
+            return currentDuration;
+        }
+    }
+}
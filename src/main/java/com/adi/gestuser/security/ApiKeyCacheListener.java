@@ -0,0 +1,46 @@
+package com.adi.gestuser.security;
+
+import com.adi.gestuser.entity.ApiKey;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Listener JPA dell'entità ApiKey: ogni scrittura, da qualunque punto dell'applicazione,
+ * invalida la voce corrispondente in ApiKeyCache dopo il commit. Prima del commit una richiesta concorrente
+ * ricaricherebbe dal database il valore precedente, che resterebbe in cache fino al TTL.
+ */
+@Component
+@RequiredArgsConstructor
+public class ApiKeyCacheListener {
+
+    // ObjectProvider: il listener viene creato insieme all'EntityManagerFactory, prima della cache
+    private final ObjectProvider<ApiKeyCache> apiKeyCache;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onWrite( ApiKey apiKey ) {
+        String apikey = apiKey.getApikey();
+
+        if( TransactionSynchronizationManager.isSynchronizationActive() ) {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate( apikey );
+                }
+            } );
+        } else {
+            invalidate( apikey );
+        }
+    }
+
+    private void invalidate( String apikey ) {
+        apiKeyCache.ifAvailable( cache -> cache.invalidate( apikey ) );
+    }
+}
@@ -0,0 +1,51 @@
+package com.adi.gestuser.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@RequiredArgsConstructor
+public class ApiKeyRateLimitFilter extends OncePerRequestFilter {
+
+    private final ApiKeyRateLimiter apiKeyRateLimiter;
+
+
+    @Override
+    protected void doFilterInternal( HttpServletRequest request,
+                                     HttpServletResponse response,
+                                     FilterChain filterChain ) throws ServletException, IOException {
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+        if( authentication instanceof ApiKeyAuthenticationToken apiKeyAuthentication ) {
+            long waitNanos = apiKeyRateLimiter.tryAcquire(
+                    apiKeyAuthentication.getApiKey().getApikey(),
+                    apiKeyAuthentication.getApiKey().getApikeyRole()
+            );
+
+            if( waitNanos > 0 ) {
+                // Limite superato: la richiesta viene rifiutata prima di arrivare ai controller
+                long retryAfterSeconds = Math.max( 1, ( long ) Math.ceil( waitNanos / ( double ) TimeUnit.SECONDS.toNanos( 1 ) ) );
+
+                response.setStatus( HttpStatus.TOO_MANY_REQUESTS.value() );
+                response.setHeader( HttpHeaders.RETRY_AFTER, String.valueOf( retryAfterSeconds ) );
+                response.getWriter().write( "Limite di richieste superato." );
+                return;
+            }
+        }
+
+        filterChain.doFilter( request, response );
+    }
+}
@@ -0,0 +1,58 @@
+package com.adi.gestuser.security;
+
+import com.adi.gestuser.enums.ApikeyRole;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro dei token bucket, uno per API key.
+ * ConcurrentHashMap garantisce accessi concorrenti senza sincronizzazione globale.
+ */
+@Component
+@RequiredArgsConstructor
+public class ApiKeyRateLimiter {
+
+    private final RateLimitProperties rateLimitProperties;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+
+    /**
+     * TRY ACQUIRE, consuma un token dal bucket dell'API key
+     * @param apikey valore dell'API key
+     * @param role ruolo dell'API key
+     * @return 0 se la richiesta è consentita, altrimenti i nanosecondi da attendere
+     */
+    public long tryAcquire( String apikey, ApikeyRole role ) {
+        if( !rateLimitProperties.isEnabled() ) {
+            return 0L;
+        }
+
+        RateLimitProperties.Limit limit = rateLimitProperties.getRoles().get( role );
+
+        // Ruolo non configurato: nessun limite
+        if( limit == null ) {
+            return 0L;
+        }
+
+        TokenBucket bucket = buckets.get( apikey );
+
+        if( bucket == null ) {
+            bucket = buckets.computeIfAbsent( apikey,
+                    key -> new TokenBucket( limit.getCapacity(), limit.getRefillPerSecond() ) );
+        }
+
+        return bucket.tryConsume();
+    }
+
+    /**
+     * BUCKETS, vista in sola lettura dei bucket attivi
+     * @return mappa API key - bucket
+     */
+    public Map<String, TokenBucket> buckets() {
+        return Map.copyOf( buckets );
+    }
+}
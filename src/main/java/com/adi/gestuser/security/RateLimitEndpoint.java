@@ -0,0 +1,45 @@
+package com.adi.gestuser.security;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Endpoint actuator /actuator/ratelimit con lo stato dei token bucket.
+ * Le API key vengono mascherate.
+ */
+@Component
+@Endpoint(id = "ratelimit")
+@RequiredArgsConstructor
+public class RateLimitEndpoint {
+
+    private final ApiKeyRateLimiter apiKeyRateLimiter;
+
+    @ReadOperation
+    public List<BucketState> buckets() {
+        return apiKeyRateLimiter.buckets().entrySet().stream()
+                .map( entry -> new BucketState(
+                        mask( entry.getKey() ),
+                        entry.getValue().getCapacity(),
+                        entry.getValue().availableTokens(),
+                        entry.getValue().getRejected()
+                ) )
+                .sorted( Comparator.comparing( BucketState::apikey ) )
+                .toList();
+    }
+
+    private String mask( String apikey ) {
+        if( apikey.length() <= 8 ) {
+            return "****";
+        }
+
+        return apikey.substring( 0, 4 ) + "****" + apikey.substring( apikey.length() - 4 );
+    }
+
+    public record BucketState( String apikey, long capacity, long availableTokens, long rejected ) {
+    }
+}
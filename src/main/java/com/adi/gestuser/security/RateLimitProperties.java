@@ -0,0 +1,43 @@
+package com.adi.gestuser.security;
+
+import com.adi.gestuser.enums.ApikeyRole;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Positive;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Limiti di richieste per ruolo dell'API key.
+ * I ruoli senza configurazione non sono limitati; capacity e refill-per-second devono essere positivi,
+ * altrimenti l'avvio fallisce.
+ */
+@Getter
+@Setter
+@Component
+@Validated
+@ConfigurationProperties(prefix = "app.ratelimit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    private Map<ApikeyRole, @Valid Limit> roles = new EnumMap<>( ApikeyRole.class );
+
+    @Getter
+    @Setter
+    public static class Limit {
+
+        // Numero massimo di richieste consecutive (dimensione del bucket)
+        @Positive
+        private long capacity;
+
+        // Token ricaricati ogni secondo
+        @Positive
+        private double refillPerSecond;
+    }
+}
@@ -28,7 +28,9 @@ public class SecurityConfiguration {
     }
 
     @Bean
-    public SecurityFilterChain securityFilterChain( HttpSecurity http, ApiKeyAuthFilter apiKeyAuthFilter ) throws Exception {
+    public SecurityFilterChain securityFilterChain( HttpSecurity http,
+                                                    ApiKeyAuthFilter apiKeyAuthFilter,
+                                                    ApiKeyRateLimitFilter apiKeyRateLimitFilter ) throws Exception {
 
         http
                 .csrf(AbstractHttpConfigurer::disable)
@@ -36,6 +38,7 @@ public class SecurityConfiguration {
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore( apiKeyAuthFilter, UsernamePasswordAuthenticationFilter.class )
+                .addFilterAfter( apiKeyRateLimitFilter, ApiKeyAuthFilter.class )
                 .sessionManagement(session -> session
                         .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 );
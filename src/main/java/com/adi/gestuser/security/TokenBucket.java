@@ -0,0 +1,77 @@
+package com.adi.gestuser.security;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket lock-free: lo stato (token disponibili e istante dell'ultima ricarica)
+ * è un valore immutabile aggiornato tramite compare-and-set.
+ */
+public class TokenBucket {
+
+    private final long capacity;
+
+    private final double tokensPerNano;
+
+    private final AtomicReference<State> state;
+
+    private final LongAdder rejected = new LongAdder();
+
+    public TokenBucket( long capacity, double refillPerSecond ) {
+        // Con una ricarica nulla l'attesa del prossimo token sarebbe infinita
+        if( capacity <= 0 || !( refillPerSecond > 0 ) ) {
+            throw new IllegalArgumentException( "capacity e refillPerSecond devono essere positivi" );
+        }
+
+        this.capacity = capacity;
+        this.tokensPerNano = refillPerSecond / TimeUnit.SECONDS.toNanos( 1 );
+        this.state = new AtomicReference<>( new State( capacity, System.nanoTime() ) );
+    }
+
+
+    /**
+     * TRY CONSUME, prova a consumare un token
+     * @return 0 se il token è stato consumato, altrimenti i nanosecondi da attendere prima del prossimo token
+     */
+    public long tryConsume() {
+        while( true ) {
+            State current = state.get();
+            long now = System.nanoTime();
+            double available = refill( current, now );
+
+            if( available < 1 ) {
+                rejected.increment();
+                return ( long ) Math.ceil( ( 1 - available ) / tokensPerNano );
+            }
+
+            if( state.compareAndSet( current, new State( available - 1, now ) ) ) {
+                return 0L;
+            }
+        }
+    }
+
+    /**
+     * AVAILABLE TOKENS, token disponibili in questo istante
+     * @return numero di token
+     */
+    public long availableTokens() {
+        return ( long ) refill( state.get(), System.nanoTime() );
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+
+    private double refill( State current, long now ) {
+        return Math.min( capacity, current.tokens() + ( now - current.timestamp() ) * tokensPerNano );
+    }
+
+    private record State( double tokens, long timestamp ) {
+    }
+}
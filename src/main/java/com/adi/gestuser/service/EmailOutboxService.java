@@ -0,0 +1,16 @@
+package com.adi.gestuser.service;
+
+import com.adi.gestuser.entity.EmailOutbox;
+
+import java.util.List;
+
+public interface EmailOutboxService {
+    void enqueueMailMessage(Long userId, String name, String to, String token, String subject);
+
+    void enqueueResendMessage(Long userId, String name, String to, String token, String subject);
+
+    void enqueueRecoveryMessage(String name, String to, String token);
+
+    void enqueueAll(List<EmailOutbox> emails);
+
+}
@@ -0,0 +1,13 @@
+package com.adi.gestuser.service;
+
+import com.adi.gestuser.enums.FileFormat;
+
+import java.io.OutputStream;
+
+public interface UserExportService {
+
+    // Scrive tutti gli utenti sull'output stream direttamente dal database, senza costruire liste in memoria
+    void exportUsers( FileFormat format, OutputStream outputStream );
+
+    String getContentType( FileFormat format );
+}
@@ -0,0 +1,14 @@
+package com.adi.gestuser.service;
+
+import com.adi.gestuser.dto.ImportJobDTO;
+import com.adi.gestuser.enums.FileFormat;
+
+import java.io.InputStream;
+
+public interface UserImportService {
+
+    // Legge le righe (CSV o NDJSON di SignupDTO) e avvia l'import in background, restituisce subito lo stato del job
+    ImportJobDTO submitImport( FileFormat format, InputStream inputStream );
+
+    ImportJobDTO getImportJob( String jobId );
+}
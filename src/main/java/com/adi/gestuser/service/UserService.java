@@ -3,7 +3,10 @@ package com.adi.gestuser.service;
 import com.adi.gestuser.dto.*;
 import com.adi.gestuser.entity.ProfilePermission;
 import com.adi.gestuser.entity.User;
+import com.adi.gestuser.enums.CountMode;
+import com.adi.gestuser.enums.SearchMode;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -40,15 +43,42 @@ public interface UserService {
     // DTO RETURNS
     UserDTO getUserDTOById( Long id );
 
-    PagedResponseDTO<UserDTO> getAllUsers( int pageNo, int pageSize, String sortBy, String sortDir, int powerOfUser);
+    // Restituisce l'utente per email come DTO, senza caricare l'entità né la password
+    Optional<UserDTO> findDTOByEmail( String email );
 
-    PagedResponseDTO<UserDTO> getByEmailContains( String email, int pageNo, int pageSize, String sortBy, String sortDir);
+    PagedResponseDTO<UserDTO> getAllUsers( int pageNo, int pageSize, String sortBy, String sortDir, int powerOfUser, CountMode countMode);
+
+    PagedResponseDTO<UserDTO> getByEmailContains( String email, SearchMode searchMode, int pageNo, int pageSize, String sortBy, String sortDir, CountMode countMode);
+
+    PagedResponseDTO<UserDTO> getByUsernameContains( String username, SearchMode searchMode, int pageNo, int pageSize, String sortBy, String sortDir, CountMode countMode);
+
+    CursorPagedResponseDTO<UserDTO> getAllUsersByCursor( String cursor, int pageSize, int powerOfUser );
+
+    CursorPagedResponseDTO<UserDTO> getByEmailContainsByCursor( String email, SearchMode searchMode, String cursor, int pageSize );
+
+    CursorPagedResponseDTO<UserDTO> getByUsernameContainsByCursor( String username, SearchMode searchMode, String cursor, int pageSize );
 
     ProfilePermissionDTO mapProfilePermissionToDTO( ProfilePermission profilePermission );
 
-    UserDTO modifyUser( Long id, UserDTO userDTO );
+    // ifMatch: ETag letto dal client, se presente la modifica viene rifiutata quando l'utente è cambiato nel frattempo
+    UserDTO modifyUser( Long id, UserDTO userDTO, String ifMatch );
 
     Set<ProfilePermissionDTO> findByProfileIdDTO( Long profileId );
 
+    // MULTI GET: una query IN per tabella, al massimo app.batch.max_size chiavi
+    BatchResponseDTO<Long, UserDTO> getUsersByIds( List<Long> ids );
+
+    BatchResponseDTO<String, UserDTO> getUsersByEmails( List<String> emails );
+
+    BatchResponseDTO<String, UserDTO> getUsersByUsernames( List<String> usernames );
+
+    BatchResponseDTO<Long, Set<ProfilePermissionDTO>> findByProfileIdsDTO( List<Long> profileIds );
+
     ProfileDTO getProfileByUserId( Long userId );
+
+    // ETAG: calcolati con query sulle sole versioni, senza caricare le entità
+    String getUserETag( Long id );
+
+    // null se il profilo non esiste
+    String getProfileETag( Long profileId );
 }
@@ -1,5 +1,6 @@
 package com.adi.gestuser.service.impl;
 
+import com.adi.gestuser.cache.ConfirmationRequestCoalescer;
 import com.adi.gestuser.dto.ChangePasswordDTO;
 import com.adi.gestuser.dto.SignupDTO;
 import com.adi.gestuser.entity.Confirmation;
@@ -11,11 +12,10 @@ import com.adi.gestuser.exception.ErrorCodeList;
 import com.adi.gestuser.exception.ResourceNotFoundException;
 import com.adi.gestuser.exception.appException;
 import com.adi.gestuser.repository.ConfirmationRepository;
-import com.adi.gestuser.repository.ProfileRepository;
+import com.adi.gestuser.repository.UserRepository;
 import com.adi.gestuser.service.AuthenticationService;
-import com.adi.gestuser.service.EmailService;
+import com.adi.gestuser.service.EmailOutboxService;
 import com.adi.gestuser.service.UserService;
-import com.adi.gestuser.utils.FirstPasswordGenerator;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -25,7 +25,9 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
@@ -35,15 +37,19 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
     private final PasswordEncoder passwordEncoder;
 
-    private final ProfileRepository profileRepository;
+    private final UserRepository userRepository;
 
     private final ConfirmationRepository confirmationRepository;
 
-    private final EmailService emailService;
+    private final EmailOutboxService emailOutboxService;
+
+    private final ConfirmationRequestCoalescer confirmationRequestCoalescer;
 
 
     /**
-     * CREATE USER, per utilizzo interno
+     * CREATE USER, per utilizzo interno.
+     * Utente, profilo e conferma vengono scritti con un solo statement: se username o email sono già presenti
+     * è il vincolo di unicità del database a rifiutare l'insert
      * @param signupDTO username, email
      * @param confEmail boolean
      * @return User
@@ -52,67 +58,78 @@ public class AuthenticationServiceImpl implements AuthenticationService {
     @Transactional
     public User createUser( SignupDTO signupDTO, boolean confEmail) {
 
-        // Controlla se l'username o l'email forniti esistono nel database.
-        if (userService.existsByUsername(signupDTO.getUsername())) {
-            throw new appException(HttpStatus.BAD_REQUEST, ErrorCodeList.EXISTINGUSERNAME);
-        }
-
-        if (userService.existsByEmail(signupDTO.getEmail())) {
-            throw new appException(HttpStatus.BAD_REQUEST, ErrorCodeList.EXISTINGEMAIL);
-        }
-
-
         // Crea un nuovo oggetto User e popola i suoi campi con i valori forniti.
         User user = new User();
         user.setUsername(signupDTO.getUsername());
         user.setEmail(signupDTO.getEmail());
         user.setEnabled(false);
-        String temporaryPassword = FirstPasswordGenerator.generatePass();
-        user.setPassword(passwordEncoder.encode(temporaryPassword));
         user.setTemporaryPassword(true);
 
-        // Salva l'utente nel database.
-        user = userService.save(user);
+        // todo: eliminare in produzione
+        // condizione creata ai fini della generazione automatica degli utenti
+        // Con la mail la password temporanea viene generata e assegnata all'invio (EmailOutboxSender)
+        user.setPassword(confEmail ? User.PENDING_PASSWORD : passwordEncoder.encode("Admin94!"));
 
         // Crea un nuovo oggetto Confirmation e popola i suoi campi con l'utente.
         Confirmation confirmation = new Confirmation(user);
         confirmation.setTokenType( TokenType.EMAIL );
-        // Salva la conferma nel database.
-        Confirmation confimationSaved = confirmationRepository.save(confirmation);
 
-        List<Confirmation> confirmationList = List.of(confimationSaved);
+        // Crea un nuovo oggetto Profile e popola i suoi campi con l'utente.
+        // DEFAULT: DIPENDENTE
+        Profile userProfile = new Profile( ProfileList.USER);
 
-        user.setConfirmation( confirmationList );
+        // Salva utente, profilo e conferma nel database.
+        Long userId = userRepository.insertSignup(
+                user.getUsername(),
+                user.getEmail(),
+                user.getPassword(),
+                userProfile.getName().name(),
+                userProfile.getPower(),
+                confirmation.getToken(),
+                confirmation.getTokenType().name(),
+                confirmation.getCreatedDate()
+        );
 
-        // todo: eliminare in produzione
-        // Invia un'email all'utente con il token di conferma e la password temporanea.
-        // condizione creata ai fini della generazione automatica degli utenti
+        // Nessuna riga inserita: username o email già presenti
+        if( userId == null ) {
+            throw duplicateSignup( user );
+        }
+        user.setId( userId );
+
+        userProfile.setId( user.getId() );
+        userProfile.setUser( user );
+        user.setProfile( userProfile );
+        user.setConfirmation( List.of( confirmation ) );
+
+        // Accoda l'email con il token di conferma e la password temporanea, inviata dopo il commit.
         if (confEmail) {
 
-            emailService.sendMailMessage(
+            emailOutboxService.enqueueMailMessage(
+                    user.getId(),
                     user.getUsername(),
                     user.getEmail(),
-                    confirmation.getToken(),
-                    temporaryPassword,
+                    confirmation.getToken().toString(),
                     "Richiesta di verifica Account e password temporanea"
             );
-        } else {
-            user.setPassword( passwordEncoder.encode( "Admin94!" ) );
         }
 
-        // Crea un nuovo oggetto Profile e popola i suoi campi con l'utente.
-        // DEFAULT: DIPENDENTE
-        Profile userProfile = new Profile( ProfileList.USER);
-
-        // Salva il profilo nel database.
-        userProfile.setUser(user);
-
-        // Salva il profilo nel database.
-        Profile profileSaved = profileRepository.save(userProfile);
+        return user;
+    }
 
-        user.setProfile( profileSaved );
+    /**
+     * DUPLICATE SIGNUP, individua il campo già presente dopo un insert scartato dal conflitto.
+     * Se lo username non esiste il conflitto è sull'email: si assume che la riga in conflitto non sia stata
+     * eliminata tra l'insert e questo controllo, altrimenti EXISTINGEMAIL viene restituito anche se nessuno dei due
+     * campi è più occupato
+     * @param user utente richiesto
+     * @return eccezione con il codice di errore corrispondente
+     */
+    private appException duplicateSignup( User user ) {
+        if( userService.existsByUsername( user.getUsername() ) ) {
+            return new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.EXISTINGUSERNAME );
+        }
 
-        return user;
+        return new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.EXISTINGEMAIL );
     }
 
     /**
@@ -121,14 +138,14 @@ public class AuthenticationServiceImpl implements AuthenticationService {
      * @param email nuova email
      */
     @Override
+    @Transactional
     public void changeEmail(Long userId, String email) {
         User user = userService.findById(userId);
 
         user.setEmail(email);
 
-        String tempPass = FirstPasswordGenerator.generatePass();
-
-        user.setPassword(passwordEncoder.encode(tempPass));
+        // La password temporanea viene generata e assegnata all'invio della mail
+        user.setPassword(User.PENDING_PASSWORD);
 
         user.setTemporaryPassword(true);
 
@@ -142,11 +159,11 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
         confirmationRepository.save(confirmation);
 
-        emailService.sendMailMessage(
+        emailOutboxService.enqueueMailMessage(
+                user.getId(),
                 user.getUsername(),
                 user.getEmail(),
-                confirmation.getToken(),
-                tempPass,
+                confirmation.getToken().toString(),
                 "Richiesta di verifica Account e password temporanea"
         );
 
@@ -215,8 +232,10 @@ public class AuthenticationServiceImpl implements AuthenticationService {
     @Transactional
     public Confirmation verifyToken( String token, TokenType tokenType) {
 
-        // Recupera la conferma dal database.
-        Confirmation confirmation = confirmationRepository.findByToken(token);
+        // Recupera la conferma dal database, un token non in formato UUID non può esistere.
+        Confirmation confirmation = parseToken(token)
+                .map(confirmationRepository::findByToken)
+                .orElse(null);
 
         if( confirmation == null || !confirmation.getTokenType().equals(tokenType)){
             throw new appException(HttpStatus.BAD_REQUEST, ErrorCodeList.INVALID_TOKEN);
@@ -250,10 +269,12 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
 
     /**
-     * RESET PASSWORD REQUEST, invia una email di reset in caso venga trovato un match
+     * RESET PASSWORD REQUEST, invia una email di reset in caso venga trovato un match,
+     * una sola volta per finestra di coalescenza
      * @param email email dell'utente
      */
     @Override
+    @Transactional
     public void resetPasswordRequest(String email) {
 
 
@@ -263,6 +284,11 @@ public class AuthenticationServiceImpl implements AuthenticationService {
                     new ResourceNotFoundException( ErrorCodeList.NF404)
             );
 
+            // Richiesta ripetuta nella finestra di coalescenza: il token già inviato resta valido
+            if (!confirmationRequestCoalescer.tryAcquire(user.getId(), TokenType.PASSWORD)) {
+                return;
+            }
+
 
             // Crea un nuovo oggetto Confirmation e popola i suoi campi con l'utente.
             Confirmation confirmation = new Confirmation(user);
@@ -272,22 +298,28 @@ public class AuthenticationServiceImpl implements AuthenticationService {
             // Salva la conferma nel database.
             confirmationRepository.save(confirmation);
 
-            // Invia un'email all'utente con il token di conferma.
-            emailService.sendRecoveryMessage(user.getUsername(), user.getEmail(), confirmation.getToken());
+            // Accoda l'email con il token di conferma.
+            emailOutboxService.enqueueRecoveryMessage(user.getUsername(), user.getEmail(), confirmation.getToken().toString());
         }
     }
 
 
     /**
-     * RESEND VERIFICATION REQUEST, invia una email di verifica
+     * RESEND VERIFICATION REQUEST, invia una email di verifica, una sola volta per finestra di coalescenza
      * @param userId id utente
      */
     @Override
+    @Transactional
     public void resendVerificationRequest(Long userId) {
 
         User user = userService.findById(userId);
 
-        Set<Confirmation> confirmationSet = confirmationRepository.findByUserId(user.getId());
+        // Richiesta ripetuta nella finestra di coalescenza: token e password temporanea già inviati restano validi
+        if (!confirmationRequestCoalescer.tryAcquire(user.getId(), TokenType.EMAIL)) {
+            return;
+        }
+
+        Set<Confirmation> confirmationSet = confirmationRepository.findByTokenTypeAndUserId(TokenType.EMAIL, user.getId());
 
         Confirmation confirmation = confirmationSet.stream().findFirst().orElseGet(() -> {
                     Confirmation newConfirmation = new Confirmation(user);
@@ -297,10 +329,12 @@ public class AuthenticationServiceImpl implements AuthenticationService {
                 return newConfirmation;
                 });
 
+        // Il reinvio riusa la conferma: la data della richiesta chiude la finestra di coalescenza anche sugli altri nodi
+        confirmation.setLastRequestedDate(LocalDateTime.now());
 
-        String temporaryPass = FirstPasswordGenerator.generatePass();
 
-        user.setPassword(passwordEncoder.encode(temporaryPass));
+        // La password temporanea viene generata e assegnata all'invio della mail
+        user.setPassword(User.PENDING_PASSWORD);
 
         user.setEnabled(false);
 
@@ -308,14 +342,28 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
         userService.save(user);
 
-        emailService.resendMailMessage(
+        emailOutboxService.enqueueResendMessage(
+                user.getId(),
                 user.getUsername(),
                 user.getEmail(),
-                confirmation.getToken(),
-                temporaryPass,
+                confirmation.getToken().toString(),
                 "Le informazioni del tuo account sono state aggiornate. Verifica il tuo account."
         );
 
     }
 
+
+    /**
+     * PARSE TOKEN
+     * @param token token ricevuto dal client
+     * @return token come UUID, vuoto se il formato non è valido
+     */
+    private static Optional<UUID> parseToken( String token ) {
+        try {
+            return Optional.of( UUID.fromString( token ) );
+        } catch( IllegalArgumentException e ) {
+            return Optional.empty();
+        }
+    }
+
 }
@@ -0,0 +1,353 @@
+package com.adi.gestuser.service.impl;
+
+import com.adi.gestuser.cache.UserCredentialCache;
+import com.adi.gestuser.entity.EmailOutbox;
+import com.adi.gestuser.entity.User;
+import com.adi.gestuser.enums.EmailOutboxStatus;
+import com.adi.gestuser.enums.EmailType;
+import com.adi.gestuser.service.EmailService;
+import com.adi.gestuser.utils.FirstPasswordGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.config.FixedDelayTask;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Invio in background delle mail accodate in email_outbox.
+ * Ogni ciclo prenota un blocco di righe scadute con FOR UPDATE SKIP LOCKED, spostandone in avanti next_attempt_at
+ * (lease): più istanze dell'applicazione non inviano la stessa mail e una riga rimasta a metà per un arresto
+ * torna disponibile alla scadenza del lease. Le mail del blocco vengono inviate in parallelo su mailTaskExecutor
+ * (al più app.mail.pool_size invii SMTP contemporanei); quelle inviate vengono cancellate, quelle fallite
+ * riprogrammate con backoff esponenziale fino a max_attempts, poi segnate FAILED.
+ * La password temporanea delle mail di verifica viene generata qui, al momento dell'invio, e assegnata
+ * all'utente solo dopo l'invio: la coda non contiene segreti. Controllo, invio e assegnazione avvengono con la riga
+ * dell'utente bloccata, in una transazione: le mail dello stesso utente non partono in parallelo e solo la prima
+ * trova la password in attesa (al più app.mail.pool_size connessioni restano occupate durante gli invii SMTP).
+ */
+@Component
+public class EmailOutboxSender implements SchedulingConfigurer {
+
+    private static final Logger logger = LoggerFactory.getLogger( EmailOutboxSender.class );
+
+    private static final String CLAIM_BATCH =
+            "update \"email_outbox\" set attempts = attempts + 1, next_attempt_at = ? " +
+            "where id in (select id from \"email_outbox\" where status = 'PENDING' and next_attempt_at <= ? " +
+            "order by next_attempt_at limit ? for update skip locked) " +
+            "returning id, email_type, recipient, name, token, user_id, subject, attempts, created_at";
+
+    private static final String DELETE_SENT =
+            "delete from \"email_outbox\" where id = ?";
+
+    private static final String SCHEDULE_RETRY =
+            "update \"email_outbox\" set next_attempt_at = ?, last_error = ? where id = ?";
+
+    private static final String MARK_FAILED =
+            "update \"email_outbox\" set status = 'FAILED', last_error = ? where id = ?";
+
+    // Lock della riga utente fino al commit; nessuna riga se l'utente non esiste più
+    private static final String LOCK_PENDING_PASSWORD =
+            "select password = ? from \"users\" where id = ? for no key update";
+
+    // La versione cambia come per una modifica da Hibernate, così un salvataggio concorrente dell'utente
+    // fallisce invece di riscrivere la password in attesa
+    private static final String ISSUE_PASSWORD =
+            "update \"users\" set password = ?, version = version + 1 where id = ?";
+
+    private static final String COUNT_BY_STATUS =
+            "select status, count(*) from \"email_outbox\" group by status";
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private static final RowMapper<EmailOutbox> CLAIMED_ROW = ( rs, rowNum ) -> {
+        EmailOutbox email = new EmailOutbox();
+        email.setId( rs.getLong( "id" ) );
+        email.setEmailType( EmailType.valueOf( rs.getString( "email_type" ) ) );
+        email.setRecipient( rs.getString( "recipient" ) );
+        email.setName( rs.getString( "name" ) );
+        email.setToken( rs.getString( "token" ) );
+        email.setUserId( rs.getObject( "user_id", Long.class ) );
+        email.setSubject( rs.getString( "subject" ) );
+        email.setAttempts( rs.getInt( "attempts" ) );
+        email.setCreatedAt( rs.getObject( "created_at", OffsetDateTime.class ).toInstant() );
+        return email;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EmailService emailService;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final UserCredentialCache userCredentialCache;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ThreadPoolTaskExecutor mailTaskExecutor;
+
+    private final Duration pollInterval;
+
+    private final int batchSize;
+
+    private final int maxAttempts;
+
+    private final Duration backoffBase;
+
+    private final Duration backoffMax;
+
+    private final Duration lease;
+
+    private final AtomicLong pending = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final Timer latency;
+
+    private final Counter sent;
+
+    private final Counter retried;
+
+    private final Counter exhausted;
+
+    public EmailOutboxSender( JdbcTemplate jdbcTemplate,
+                              EmailService emailService,
+                              PasswordEncoder passwordEncoder,
+                              UserCredentialCache userCredentialCache,
+                              TransactionTemplate transactionTemplate,
+                              @Qualifier("mailTaskExecutor") ThreadPoolTaskExecutor mailTaskExecutor,
+                              @Value("${app.mail.outbox.poll_interval}") Duration pollInterval,
+                              @Value("${app.mail.outbox.batch_size}") int batchSize,
+                              @Value("${app.mail.outbox.max_attempts}") int maxAttempts,
+                              @Value("${app.mail.outbox.backoff_base}") Duration backoffBase,
+                              @Value("${app.mail.outbox.backoff_max}") Duration backoffMax,
+                              @Value("${app.mail.outbox.lease}") Duration lease,
+                              MeterRegistry meterRegistry ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.emailService = emailService;
+        this.passwordEncoder = passwordEncoder;
+        this.userCredentialCache = userCredentialCache;
+        this.transactionTemplate = transactionTemplate;
+        this.mailTaskExecutor = mailTaskExecutor;
+        this.pollInterval = pollInterval;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoffBase = backoffBase;
+        this.backoffMax = backoffMax;
+        this.lease = lease;
+
+        // Metriche: profondità della coda, tempo dall'accodamento all'invio, esito dei tentativi
+        Gauge.builder( "mail.outbox.size", pending, AtomicLong::get )
+                .tag( "status", EmailOutboxStatus.PENDING.name() )
+                .register( meterRegistry );
+        Gauge.builder( "mail.outbox.size", failed, AtomicLong::get )
+                .tag( "status", EmailOutboxStatus.FAILED.name() )
+                .register( meterRegistry );
+        this.latency = Timer.builder( "mail.outbox.latency" )
+                .description( "Tempo tra l'accodamento e l'invio della mail" )
+                .register( meterRegistry );
+        this.sent = attempts( meterRegistry, "sent" );
+        this.retried = attempts( meterRegistry, "retry" );
+        this.exhausted = attempts( meterRegistry, "failed" );
+    }
+
+
+    @Override
+    public void configureTasks( ScheduledTaskRegistrar taskRegistrar ) {
+        // Primo polling dopo un intervallo, non durante l'avvio
+        taskRegistrar.addFixedDelayTask( new FixedDelayTask( this::dispatch, pollInterval, pollInterval ) );
+    }
+
+
+    /**
+     * DISPATCH, svuota la coda a blocchi finché trova mail scadute, poi aggiorna le metriche della coda
+     */
+    public void dispatch() {
+        try {
+            int claimed;
+            do {
+                claimed = sendBatch();
+            } while( claimed == batchSize );
+
+            refreshQueueSize();
+        } catch( Exception e ) {
+            logger.error( "Errore nell'elaborazione della coda mail: {}", e.getMessage() );
+        }
+    }
+
+
+    /**
+     * SEND BATCH, prenota un blocco di mail, le invia in parallelo e registra l'esito
+     * @return numero di mail prenotate
+     */
+    private int sendBatch() {
+        Instant now = Instant.now();
+
+        List<EmailOutbox> batch = jdbcTemplate.query( CLAIM_BATCH, CLAIMED_ROW,
+                now.plus( lease ).atOffset( ZoneOffset.UTC ), now.atOffset( ZoneOffset.UTC ), batchSize );
+
+        if( batch.isEmpty() ) return 0;
+
+        List<CompletableFuture<Throwable>> results = batch.stream()
+                .map( email -> CompletableFuture.runAsync( () -> send( email ), mailTaskExecutor )
+                        .handle( ( ignored, error ) -> error ) )
+                .toList();
+
+        List<EmailOutbox> delivered = new ArrayList<>();
+        List<Object[]> retries = new ArrayList<>();
+        List<Object[]> failures = new ArrayList<>();
+
+        for( int i = 0; i < batch.size(); i++ ) {
+            EmailOutbox email = batch.get( i );
+            Throwable error = results.get( i ).join();
+
+            if( error == null ) {
+                delivered.add( email );
+                continue;
+            }
+
+            String message = errorMessage( error );
+
+            if( email.getAttempts() >= maxAttempts ) {
+                logger.error( "Mail {} a {} non inviata dopo {} tentativi: {}", email.getId(), email.getRecipient(), email.getAttempts(), message );
+                failures.add( new Object[]{ message, email.getId() } );
+            } else {
+                logger.warn( "Invio della mail {} fallito (tentativo {}): {}", email.getId(), email.getAttempts(), message );
+                Instant nextAttempt = Instant.now().plus( backoff( email.getAttempts() ) );
+                retries.add( new Object[]{ nextAttempt.atOffset( ZoneOffset.UTC ), message, email.getId() } );
+            }
+        }
+
+        if( !delivered.isEmpty() ) {
+            jdbcTemplate.batchUpdate( DELETE_SENT, delivered.stream().map( email -> new Object[]{ email.getId() } ).toList() );
+        }
+        if( !retries.isEmpty() ) {
+            jdbcTemplate.batchUpdate( SCHEDULE_RETRY, retries );
+        }
+        if( !failures.isEmpty() ) {
+            jdbcTemplate.batchUpdate( MARK_FAILED, failures );
+        }
+
+        Instant sentAt = Instant.now();
+        for( EmailOutbox email : delivered ) {
+            latency.record( Duration.between( email.getCreatedAt(), sentAt ) );
+        }
+        sent.increment( delivered.size() );
+        retried.increment( retries.size() );
+        exhausted.increment( failures.size() );
+
+        return batch.size();
+    }
+
+
+    /**
+     * SEND, invio SMTP della mail in base al tipo
+     * @param email mail prenotata
+     */
+    private void send( EmailOutbox email ) {
+        switch( email.getEmailType() ) {
+            case VERIFY, RESEND -> sendWithTemporaryPassword( email );
+            case RECOVERY -> emailService.sendRecoveryMessage( email.getName(), email.getRecipient(), email.getToken() );
+        }
+    }
+
+
+    /**
+     * SEND WITH TEMPORARY PASSWORD, genera la password temporanea, la invia e la assegna all'utente, solo se ha
+     * ancora User.PENDING_PASSWORD, tenendo bloccata la riga dell'utente fino al commit. Un utente che ha già una
+     * password non riceve la mail (mail dello stesso utente già inviata, password cambiata nel frattempo);
+     * se l'invio fallisce o l'applicazione si arresta prima del commit la password resta in attesa
+     * e la mail viene ripetuta con una nuova password
+     * @param email mail prenotata
+     */
+    private void sendWithTemporaryPassword( EmailOutbox email ) {
+        Long userId = email.getUserId();
+
+        boolean issued = userId != null && Boolean.TRUE.equals( transactionTemplate.execute( status -> {
+            List<Boolean> pendingPassword = jdbcTemplate.queryForList( LOCK_PENDING_PASSWORD, Boolean.class, User.PENDING_PASSWORD, userId );
+
+            if( pendingPassword.isEmpty() || !Boolean.TRUE.equals( pendingPassword.get( 0 ) ) ) {
+                return false;
+            }
+
+            String temporaryPassword = FirstPasswordGenerator.generatePass();
+
+            if( email.getEmailType() == EmailType.VERIFY ) {
+                emailService.sendMailMessage( email.getName(), email.getRecipient(), email.getToken(), temporaryPassword, email.getSubject() );
+            } else {
+                emailService.resendMailMessage( email.getName(), email.getRecipient(), email.getToken(), temporaryPassword, email.getSubject() );
+            }
+
+            jdbcTemplate.update( ISSUE_PASSWORD, passwordEncoder.encode( temporaryPassword ), userId );
+            return true;
+        } ) );
+
+        if( !issued ) {
+            logger.info( "Mail {} non inviata: l'utente {} non ha una password in attesa", email.getId(), userId );
+            return;
+        }
+
+        userCredentialCache.invalidate( userId );
+    }
+
+
+    /**
+     * BACKOFF, attesa prima del tentativo successivo: backoff_base raddoppiato ad ogni tentativo, al più backoff_max
+     * @param attempts tentativi già eseguiti
+     * @return attesa
+     */
+    private Duration backoff( int attempts ) {
+        Duration delay = backoffBase.multipliedBy( 1L << Math.min( attempts - 1, 20 ) );
+        return delay.compareTo( backoffMax ) > 0 ? backoffMax : delay;
+    }
+
+
+    private void refreshQueueSize() {
+        long pendingCount = 0;
+        long failedCount = 0;
+
+        for( var row : jdbcTemplate.queryForList( COUNT_BY_STATUS ) ) {
+            long count = ( (Number) row.get( "count" ) ).longValue();
+            if( EmailOutboxStatus.PENDING.name().equals( row.get( "status" ) ) ) pendingCount = count;
+            else if( EmailOutboxStatus.FAILED.name().equals( row.get( "status" ) ) ) failedCount = count;
+        }
+
+        pending.set( pendingCount );
+        failed.set( failedCount );
+    }
+
+
+    private static String errorMessage( Throwable error ) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        String message = String.valueOf( cause.getMessage() );
+        return message.length() > MAX_ERROR_LENGTH ? message.substring( 0, MAX_ERROR_LENGTH ) : message;
+    }
+
+
+    private static Counter attempts( MeterRegistry meterRegistry, String result ) {
+        return Counter.builder( "mail.outbox.attempts" )
+                .tag( "result", result )
+                .register( meterRegistry );
+    }
+}
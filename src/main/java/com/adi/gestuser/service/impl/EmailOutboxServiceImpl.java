@@ -0,0 +1,104 @@
+package com.adi.gestuser.service.impl;
+
+import com.adi.gestuser.entity.EmailOutbox;
+import com.adi.gestuser.enums.EmailType;
+import com.adi.gestuser.repository.EmailOutboxRepository;
+import com.adi.gestuser.service.EmailOutboxService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Accodamento delle mail nella tabella di outbox.
+ * Le righe vengono scritte nella transazione del chiamante: la mail parte solo se la modifica
+ * che la genera va in commit, e la richiesta non attende il server SMTP.
+ * Una nuova mail con password temporanea sostituisce quelle dello stesso utente ancora in coda:
+ * parte solo l'ultima, con l'ultimo token e l'indirizzo attuale
+ */
+@Service
+@RequiredArgsConstructor
+public class EmailOutboxServiceImpl implements EmailOutboxService {
+
+    private static final String INSERT_EMAIL =
+            "insert into \"email_outbox\" (email_type, recipient, name, token, user_id, subject, status, attempts, next_attempt_at, created_at) " +
+            "values (?, ?, ?, ?, ?, ?, ?, 0, ?, ?)";
+
+    private static final String DELETE_QUEUED_PASSWORD_EMAILS =
+            "delete from \"email_outbox\" where user_id = ? and status = 'PENDING' and email_type in ('VERIFY', 'RESEND')";
+
+    private final EmailOutboxRepository emailOutboxRepository;
+
+    private final JdbcTemplate jdbcTemplate;
+
+
+    /**
+     * ENQUEUE MAIL MESSAGE, mail di verifica con password temporanea.
+     * L'utente deve avere User.PENDING_PASSWORD: la password viene generata all'invio.
+     * Le mail VERIFY / RESEND dell'utente ancora in coda vengono rimosse
+     *
+     * @param userId  id dell'utente
+     * @param name    nome dell'utente
+     * @param to      email dell'utente
+     * @param token   token di verifica
+     * @param subject oggetto della mail
+     */
+    @Override
+    public void enqueueMailMessage( Long userId, String name, String to, String token, String subject ) {
+        jdbcTemplate.update( DELETE_QUEUED_PASSWORD_EMAILS, userId );
+        emailOutboxRepository.save( new EmailOutbox( EmailType.VERIFY, userId, name, to, token, subject ) );
+    }
+
+    /**
+     * ENQUEUE RESEND MESSAGE, nuova mail di verifica con password ripristinata.
+     * L'utente deve avere User.PENDING_PASSWORD: la password viene generata all'invio.
+     * Le mail VERIFY / RESEND dell'utente ancora in coda vengono rimosse
+     *
+     * @param userId  id dell'utente
+     * @param name    nome dell'utente
+     * @param to      email dell'utente
+     * @param token   token di verifica
+     * @param subject oggetto della mail
+     */
+    @Override
+    public void enqueueResendMessage( Long userId, String name, String to, String token, String subject ) {
+        jdbcTemplate.update( DELETE_QUEUED_PASSWORD_EMAILS, userId );
+        emailOutboxRepository.save( new EmailOutbox( EmailType.RESEND, userId, name, to, token, subject ) );
+    }
+
+    /**
+     * ENQUEUE RECOVERY MESSAGE, mail di recupero password
+     *
+     * @param name  nome dell'utente
+     * @param to    email dell'utente
+     * @param token token di verifica
+     */
+    @Override
+    public void enqueueRecoveryMessage( String name, String to, String token ) {
+        emailOutboxRepository.save( new EmailOutbox( EmailType.RECOVERY, null, name, to, token, null ) );
+    }
+
+    /**
+     * ENQUEUE ALL, accoda più mail con un batch JDBC (import massivo)
+     *
+     * @param emails mail da accodare
+     */
+    @Override
+    public void enqueueAll( List<EmailOutbox> emails ) {
+        if( emails.isEmpty() ) return;
+
+        jdbcTemplate.batchUpdate( INSERT_EMAIL, emails, emails.size(), ( ps, email ) -> {
+            ps.setString( 1, email.getEmailType().name() );
+            ps.setString( 2, email.getRecipient() );
+            ps.setString( 3, email.getName() );
+            ps.setString( 4, email.getToken() );
+            ps.setObject( 5, email.getUserId() );
+            ps.setString( 6, email.getSubject() );
+            ps.setString( 7, email.getStatus().name() );
+            ps.setObject( 8, email.getNextAttemptAt().atOffset( ZoneOffset.UTC ) );
+            ps.setObject( 9, email.getCreatedAt().atOffset( ZoneOffset.UTC ) );
+        } );
+    }
+}
@@ -1,25 +1,37 @@
 package com.adi.gestuser.service.impl;
 
 import com.adi.gestuser.service.EmailService;
+import com.adi.gestuser.utils.MailTemplate;
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
 import jakarta.mail.MessagingException;
+import jakarta.mail.Part;
+import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.PreencodedMimeBodyPart;
+import jakarta.mail.util.ByteArrayDataSource;
 import lombok.RequiredArgsConstructor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.mail.MailPreparationException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class EmailServiceImpl implements EmailService {
 
-    private static final Logger logger = LoggerFactory.getLogger( EmailServiceImpl.class );
+    private static final String LOGO_PATH = "static/images/logo.jpg";
+
+    private static final String LOGO_ENCODING = "base64";
 
     @Value("${spring.mail.verify.host}")
     private String host;
@@ -29,11 +41,28 @@ public class EmailServiceImpl implements EmailService {
 
     private final JavaMailSender javaMailSender;
 
+    private final SmtpTransportPool smtpTransportPool;
+
+    // Template compilati e logo caricati una sola volta, alla creazione del servizio
+    private final MailTemplate verifyTemplate = MailTemplate.load( "mail/verify.html" );
+
+    private final MailTemplate resendTemplate = MailTemplate.load( "mail/resend.html" );
+
+    private final MailTemplate recoveryTemplate = MailTemplate.load( "mail/recovery.html" );
+
+    private final DataSource logoImage = loadLogoImage();
+
+    /**
+     * SEND GENERIC MAIL MESSAGE, invio sincrono: gli errori arrivano al chiamante (EmailOutboxSender),
+     * che riprogramma il tentativo
+     * @param to destinatario
+     * @param subject oggetto della mail
+     * @param html corpo della mail
+     */
     private void sendGenericMailMessage( String to, String subject, String html ) {
-        try {
+        MimeMessage message = javaMailSender.createMimeMessage();
 
-            // Crea un nuovo messaggio di posta elettronica.
-            MimeMessage message = javaMailSender.createMimeMessage();
+        try {
             // Crea un nuovo helper per il messaggio di posta elettronica.
             MimeMessageHelper helper = new MimeMessageHelper( message, MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED, StandardCharsets.UTF_8.name() );
 
@@ -44,12 +73,12 @@ public class EmailServiceImpl implements EmailService {
             helper.setText( html, true );
 
             declareLogoImage( helper );
-
-            // Invia il messaggio di posta elettronica.
-            javaMailSender.send( message );
-        } catch( Exception e ) {
-            logger.error( "Errore nell'invio della mail: {}", e.getMessage() );
+        } catch( MessagingException e ) {
+            throw new MailPreparationException( e );
         }
+
+        // Invia il messaggio su una connessione SMTP già aperta, se disponibile.
+        smtpTransportPool.send( message );
     }
 
 
@@ -63,7 +92,6 @@ public class EmailServiceImpl implements EmailService {
      * @param subject           oggetto della mail
      */
     @Override
-    @Async
     public void sendMailMessage( String name, String to, String token, String temporaryPassword, String subject ) {
 
         String html = getHtmlVerify( name, token, temporaryPassword );
@@ -80,7 +108,6 @@ public class EmailServiceImpl implements EmailService {
      * @param subject           oggetto della mail
      */
     @Override
-    @Async
     public void resendMailMessage( String name, String to, String token, String temporaryPassword, String subject ) {
         // Ottieni il codice HTML per la mail di verifica.
         String html = getResendEmailVerify( name, token, temporaryPassword );
@@ -99,7 +126,6 @@ public class EmailServiceImpl implements EmailService {
      * @param token token di verifica
      */
     @Override
-    @Async
     public void sendRecoveryMessage( String name, String to, String token ) {
 
         String html = getHtmlRecovery( name, token );
@@ -116,23 +142,10 @@ public class EmailServiceImpl implements EmailService {
      * @return codice HTML per la mail di recupero password
      */
     private String getHtmlRecovery( String name, String token ) {
-        String verificationUrl = host + "auth/change-password?token=" + token;
-
-        return "<html>" +
-                "<body>" +
-                "<img src='cid:logoImage' alt='SmartAxcy Logo' style='width: 200px;'/>" +
-                "<h1>Ciao " + name + ",</h1>" +
-                "<p>Hai richiesto un cambio password</p>" +
-                "<br />" +
-                "<p>Per favore clicca sul bottone sottostante per cambiare la password</p>" +
-                "<br />" +
-                "<p><a href='" + verificationUrl + "' " +
-                "style='background-color: #00c7db; color: white; padding: 10px 20px; text-decoration: none; " +
-                "border-radius: 5px;'>" +
-                "Cambia Password</a></p>" +
-                "<p>Grazie,<br/>Il team di SmartAxcy</p>" +
-                "</body>" +
-                "</html>";
+        return recoveryTemplate.render( Map.of(
+                "name", name,
+                "verificationUrl", host + "auth/change-password?token=" + token
+        ) );
     }
 
 
@@ -145,27 +158,11 @@ public class EmailServiceImpl implements EmailService {
      * @return codice HTML per la mail di verifica
      */
     public String getHtmlVerify( String name, String token, String temporaryPassword ) {
-        String verificationUrl = host + "auth/email-confirmation?token=" + token;
-
-        return "<html>" +
-                "<body>" +
-                "<img src='cid:logoImage' alt='SmartAxcy Logo' style='width: 200px;'/>" +
-                "<h1>Ciao " + name + ",</h1>" +
-                "<p>Benvenuto in SmartAxcy, di seguito la tua Password temporanea: </p>" +
-                "<br />" +
-                "<p>" + temporaryPassword + "</p>" +
-                "<br />" +
-                "<p>Al primo Login ti verrà chiesto di cambiare la Password, ma prima abbiamo bisogno che tu verifichi questa email.</p>" +
-                "<p>Per favore clicca sul bottone sottostante per verificare il tuo account:</p>" +
-                "<br />" +
-                "<p><a href='" + verificationUrl + "' " +
-                "style='background-color: #00c7db; color: white; padding: 10px 20px; text-decoration: none; " +
-                "border-radius: 5px;'>" +
-                "Verifica Account</a></p>" +
-                "<br />" +
-                "<p>Grazie,<br/>Il team di SmartAxcy</p>" +
-                "</body>" +
-                "</html>";
+        return verifyTemplate.render( Map.of(
+                "name", name,
+                "temporaryPassword", temporaryPassword,
+                "verificationUrl", host + "auth/email-confirmation?token=" + token
+        ) );
     }
 
     /**
@@ -177,33 +174,38 @@ public class EmailServiceImpl implements EmailService {
      * @return codice HTML per la mail di verifica
      */
     public String getResendEmailVerify( String name, String token, String temporaryPassword ) {
-        String verificationUrl = host + "auth/email-confirmation?token=" + token;
-
-        return "<html>" +
-                "<body>" +
-                "<img src='cid:logoImage' alt='SmartAxcy Logo' style='width: 200px;'/>" +
-                "<h1>Ciao " + name + ",</h1>" +
-                "<p>Ciao! La password del tuo account è stata ripristinata, di seguito le nuove informazioni. </p>" +
-                "<br />" +
-                "<p>" + temporaryPassword + "</p>" +
-                "<br />" +
-                "<p>Al primo Login ti verrà chiesto di cambiare la Password, ma prima abbiamo bisogno che tu verifichi questa email.</p>" +
-                "<p>Per favore clicca sul bottone sottostante per verificare il tuo account:</p>" +
-                "<br />" +
-                "<p><a href='" + verificationUrl + "' " +
-                "style='background-color: #00c7db; color: white; padding: 10px 20px; text-decoration: none; " +
-                "border-radius: 5px;'>" +
-                "Verifica Account</a></p>" +
-                "<br />" +
-                "<p>Grazie,<br/>Il team di SmartAxcy</p>" +
-                "</body>" +
-                "</html>";
+        return resendTemplate.render( Map.of(
+                "name", name,
+                "temporaryPassword", temporaryPassword,
+                "verificationUrl", host + "auth/email-confirmation?token=" + token
+        ) );
     }
 
     private void declareLogoImage( MimeMessageHelper helper ) throws MessagingException {
-        // Aggiungi l'immagine come risorsa inline.
-        ClassPathResource logoImage = new ClassPathResource( "static/images/" + "logo.jpg" );
-        helper.addInline( "logoImage", logoImage );
+        // Aggiungi l'immagine come risorsa inline, come MimeMessageHelper.addInline ma con il contenuto già codificato.
+        MimeBodyPart logoPart = new PreencodedMimeBodyPart( LOGO_ENCODING );
+        logoPart.setDisposition( Part.INLINE );
+        logoPart.setContentID( "<logoImage>" );
+        logoPart.setDataHandler( new DataHandler( logoImage ) );
+        // Con l'header già presente JavaMail non rilegge il contenuto per sceglierne la codifica
+        logoPart.setHeader( "Content-Transfer-Encoding", LOGO_ENCODING );
+        helper.getMimeMultipart().addBodyPart( logoPart );
+    }
+
+    /**
+     * LOAD LOGO IMAGE, letto e codificato in base64 una sola volta: il DataSource restituisce un nuovo stream
+     * sugli stessi byte ad ogni lettura ed è condiviso da tutti i messaggi
+     * @return logo in memoria, già codificato
+     */
+    private static DataSource loadLogoImage() {
+        try {
+            byte[] encoded = Base64.getMimeEncoder().encode( new ClassPathResource( LOGO_PATH ).getContentAsByteArray() );
+            ByteArrayDataSource dataSource = new ByteArrayDataSource( encoded, MediaType.IMAGE_JPEG_VALUE );
+            dataSource.setName( "logo.jpg" );
+            return dataSource;
+        } catch( IOException e ) {
+            throw new UncheckedIOException( "Logo " + LOGO_PATH + " non leggibile", e );
+        }
     }
 
 }
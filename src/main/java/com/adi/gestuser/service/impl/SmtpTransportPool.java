@@ -0,0 +1,199 @@
+package com.adi.gestuser.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Connessioni SMTP riutilizzate tra un invio e l'altro.
+ * JavaMailSender.send apre una connessione per messaggio (TCP, STARTTLS e AUTH ogni volta); qui le connessioni
+ * già autenticate restano aperte e servono più messaggi. Ne restano al più pool_size, quanti gli invii paralleli
+ * di mailTaskExecutor. Una connessione inattiva da più di max_idle viene chiusa prima che lo faccia il server;
+ * se l'invio su una connessione riutilizzata fallisce (chiusa dal server nel frattempo) viene ripetuto una volta
+ * su una connessione nuova.
+ */
+@Component
+public class SmtpTransportPool {
+
+    private static final Logger logger = LoggerFactory.getLogger( SmtpTransportPool.class );
+
+    private final JavaMailSenderImpl mailSender;
+
+    private final BlockingDeque<PooledTransport> idle;
+
+    private final long maxIdleNanos;
+
+    private final int maxMessages;
+
+    private final Counter opened;
+
+    private final Counter reused;
+
+    public SmtpTransportPool( JavaMailSenderImpl mailSender,
+                              @Value("${app.mail.pool_size}") int poolSize,
+                              @Value("${app.mail.transport.max_idle}") Duration maxIdle,
+                              @Value("${app.mail.transport.max_messages}") int maxMessages,
+                              MeterRegistry meterRegistry ) {
+        this.mailSender = mailSender;
+        this.idle = new LinkedBlockingDeque<>( poolSize );
+        this.maxIdleNanos = maxIdle.toNanos();
+        this.maxMessages = maxMessages;
+
+        // Metriche: connessioni aperte e invii su una connessione già aperta, il rapporto misura il riuso
+        this.opened = Counter.builder( "mail.smtp.connections" )
+                .tag( "result", "opened" )
+                .register( meterRegistry );
+        this.reused = Counter.builder( "mail.smtp.connections" )
+                .tag( "result", "reused" )
+                .register( meterRegistry );
+    }
+
+
+    /**
+     * SEND, invia il messaggio su una connessione del pool
+     * @param message messaggio da inviare
+     */
+    public void send( MimeMessage message ) {
+        try {
+            prepare( message );
+        } catch( MessagingException e ) {
+            throw new MailSendException( "Errore nella preparazione del messaggio", e );
+        }
+
+        PooledTransport transport = borrow();
+
+        try {
+            sendOn( transport, message );
+        } catch( MessagingException e ) {
+            close( transport );
+            // Connessione appena aperta o destinatari rifiutati: un nuovo tentativo avrebbe lo stesso esito
+            if( transport.sent == 0 || e instanceof SendFailedException ) {
+                throw new MailSendException( "Errore nell'invio della mail", e );
+            }
+
+            // Connessione riutilizzata: probabilmente chiusa dal server, un solo nuovo tentativo
+            logger.debug( "Connessione SMTP non più valida, nuovo tentativo: {}", e.getMessage() );
+            transport = open();
+            try {
+                sendOn( transport, message );
+            } catch( MessagingException retryError ) {
+                close( transport );
+                throw new MailSendException( "Errore nell'invio della mail", retryError );
+            }
+        }
+
+        release( transport );
+    }
+
+
+    @PreDestroy
+    public void closeAll() {
+        PooledTransport transport;
+        while( ( transport = idle.pollFirst() ) != null ) {
+            close( transport );
+        }
+    }
+
+
+    /**
+     * BORROW, la connessione usata più di recente, chiudendo quelle rimaste inattive troppo a lungo
+     * @return connessione aperta
+     */
+    private PooledTransport borrow() {
+        PooledTransport transport;
+        while( ( transport = idle.pollFirst() ) != null ) {
+            if( System.nanoTime() - transport.lastUsed < maxIdleNanos ) {
+                reused.increment();
+                return transport;
+            }
+            close( transport );
+        }
+        return open();
+    }
+
+    private void release( PooledTransport transport ) {
+        transport.lastUsed = System.nanoTime();
+        if( transport.sent >= maxMessages || !idle.offerFirst( transport ) ) {
+            close( transport );
+        }
+    }
+
+    private PooledTransport open() {
+        try {
+            Transport transport = mailSender.getSession().getTransport( protocol() );
+            transport.connect( mailSender.getHost(), mailSender.getPort(),
+                    emptyToNull( mailSender.getUsername() ), emptyToNull( mailSender.getPassword() ) );
+            opened.increment();
+            return new PooledTransport( transport );
+        } catch( MessagingException e ) {
+            throw new MailSendException( "Connessione al server SMTP non riuscita", e );
+        }
+    }
+
+    private static void sendOn( PooledTransport transport, MimeMessage message ) throws MessagingException {
+        transport.transport.sendMessage( message, message.getAllRecipients() );
+        transport.sent++;
+    }
+
+    private static void close( PooledTransport transport ) {
+        try {
+            transport.transport.close();
+        } catch( MessagingException e ) {
+            logger.debug( "Chiusura della connessione SMTP: {}", e.getMessage() );
+        }
+    }
+
+    /**
+     * PREPARE, come JavaMailSenderImpl: data di invio e header calcolati, Message-ID esplicito mantenuto
+     * @param message messaggio da inviare
+     */
+    private static void prepare( MimeMessage message ) throws MessagingException {
+        if( message.getSentDate() == null ) {
+            message.setSentDate( new Date() );
+        }
+        String messageId = message.getMessageID();
+        message.saveChanges();
+        if( messageId != null ) {
+            message.setHeader( "Message-ID", messageId );
+        }
+    }
+
+    private String protocol() {
+        String protocol = mailSender.getProtocol();
+        return protocol != null ? protocol : JavaMailSenderImpl.DEFAULT_PROTOCOL;
+    }
+
+    private static String emptyToNull( String value ) {
+        return StringUtils.hasLength( value ) ? value : null;
+    }
+
+
+    private static final class PooledTransport {
+
+        private final Transport transport;
+
+        private long lastUsed = System.nanoTime();
+
+        private int sent;
+
+        private PooledTransport( Transport transport ) {
+            this.transport = transport;
+        }
+    }
+}
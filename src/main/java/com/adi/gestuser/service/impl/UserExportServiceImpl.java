@@ -0,0 +1,81 @@
+package com.adi.gestuser.service.impl;
+
+import com.adi.gestuser.enums.FileFormat;
+import com.adi.gestuser.exception.ErrorCodeList;
+import com.adi.gestuser.exception.appException;
+import com.adi.gestuser.service.UserExportService;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Esportazione massiva degli utenti tramite COPY ... TO STDOUT di Postgres.
+ * Le righe vengono prodotte dal database e copiate sull'output stream a blocchi,
+ * quindi la memoria usata è costante qualunque sia il numero di utenti.
+ */
+@Service
+@RequiredArgsConstructor
+public class UserExportServiceImpl implements UserExportService {
+
+    // Utenti con profilo e matrice dei permessi aggregata per utente
+    private static final String USERS_QUERY =
+            "select u.id, u.username, u.email, u.is_enabled, u.is_temporary_password, p.name as profile_name, p.power, " +
+            "  coalesce(( " +
+            "    select jsonb_object_agg(pe.name, jsonb_build_object( " +
+            "      'read', pp.read_flag, 'create', pp.create_flag, 'update', pp.update_flag, 'delete', pp.delete_flag)) " +
+            "    from \"profile_permissions\" pp join \"permissions\" pe on pe.id = pp.permission_id " +
+            "    where pp.profile_id = p.user_id " +
+            "  ), '{}'::jsonb) as permissions " +
+            "from \"users\" u join \"profiles\" p on p.user_id = u.id " +
+            "order by u.id";
+
+    private static final String CSV_COPY =
+            "COPY (" + USERS_QUERY + ") TO STDOUT WITH (FORMAT csv, HEADER)";
+
+    // Una colonna JSON per riga: delimitatore e quote sono caratteri di controllo che non compaiono mai nel JSON
+    // generato, così Postgres non applica escaping e ogni riga è un oggetto JSON valido
+    private static final String NDJSON_COPY =
+            "COPY (select row_to_json(r) from (" + USERS_QUERY + ") r) " +
+            "TO STDOUT WITH (FORMAT csv, DELIMITER E'\\x1f', QUOTE E'\\x01')";
+
+    private final DataSource dataSource;
+
+
+    /**
+     * EXPORT USERS
+     * @param format CSV o NDJSON
+     * @param outputStream stream della risposta
+     */
+    @Override
+    public void exportUsers( FileFormat format, OutputStream outputStream ) {
+        String copySql = format == FileFormat.CSV ? CSV_COPY : NDJSON_COPY;
+
+        try( Connection connection = dataSource.getConnection() ) {
+            connection.unwrap( PGConnection.class )
+                    .getCopyAPI()
+                    .copyOut( copySql, outputStream );
+
+            outputStream.flush();
+        } catch( SQLException | IOException e ) {
+            throw new appException( HttpStatus.INTERNAL_SERVER_ERROR, ErrorCodeList.EXPORTERROR );
+        }
+    }
+
+
+    /**
+     * GET CONTENT TYPE
+     * @param format CSV o NDJSON
+     * @return content type della risposta
+     */
+    @Override
+    public String getContentType( FileFormat format ) {
+        return format == FileFormat.CSV ? "text/csv" : "application/x-ndjson";
+    }
+}
@@ -0,0 +1,600 @@
+package com.adi.gestuser.service.impl;
+
+import com.adi.gestuser.dto.ImportJobDTO;
+import com.adi.gestuser.dto.ImportRowErrorDTO;
+import com.adi.gestuser.dto.SignupDTO;
+import com.adi.gestuser.entity.Confirmation;
+import com.adi.gestuser.entity.EmailOutbox;
+import com.adi.gestuser.entity.Profile;
+import com.adi.gestuser.entity.User;
+import com.adi.gestuser.enums.EmailType;
+import com.adi.gestuser.enums.FileFormat;
+import com.adi.gestuser.enums.ImportJobStatus;
+import com.adi.gestuser.enums.ProfileList;
+import com.adi.gestuser.enums.TokenType;
+import com.adi.gestuser.exception.ErrorCodeList;
+import com.adi.gestuser.exception.ResourceNotFoundException;
+import com.adi.gestuser.exception.appException;
+import com.adi.gestuser.service.EmailOutboxService;
+import com.adi.gestuser.service.UserImportService;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Import massivo di utenti in background.
+ * Le righe vengono validate alla ricezione, poi elaborate a blocchi: unicità verificata con una query per blocco,
+ * id riservati dalle sequence in un solo round trip e insert di utenti, profili e conferme in batch JDBC.
+ * Le email di verifica vengono accodate nell'outbox nella transazione di ogni blocco.
+ */
+@Service
+public class UserImportServiceImpl implements UserImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger( UserImportServiceImpl.class );
+
+    private static final String MAIL_SUBJECT = "Richiesta di verifica Account e password temporanea";
+
+    // Gli id IDENTITY sono comunque serviti da una sequence: un nextval per riga, in una sola query per blocco
+    private static final String RESERVE_USER_IDS =
+            "select nextval(pg_get_serial_sequence('\"users\"', 'id')) from generate_series(1, ?)";
+
+    private static final String RESERVE_CONFIRMATION_IDS =
+            "select nextval(pg_get_serial_sequence('\"confirmations\"', 'id')) from generate_series(1, ?)";
+
+    private static final String INSERT_USER =
+            "insert into \"users\" (id, username, email, password, is_enabled, is_temporary_password, date_token_check) " +
+            "values (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_PROFILE =
+            "insert into \"profiles\" (user_id, name, power) values (?, ?, ?)";
+
+    private static final String INSERT_CONFIRMATION =
+            "insert into \"confirmations\" (id, token, token_type, created_date, last_requested_date, user_id) values (?, ?, ?, ?, ?, ?)";
+
+    private static final String EXISTING_USERNAMES =
+            "select username from \"users\" where username in (:usernames)";
+
+    private static final String EXISTING_EMAILS =
+            "select email from \"users\" where email in (:emails)";
+
+    // CSV secondo RFC 4180: campi tra virgolette con virgole, virgolette raddoppiate e a capo al loro interno
+    private static final ObjectReader CSV_RECORDS = new CsvMapper()
+            .readerFor( String[].class )
+            .with( CsvParser.Feature.WRAP_AS_ARRAY )
+            .with( CsvParser.Feature.SKIP_EMPTY_LINES )
+            .with( CsvParser.Feature.TRIM_SPACES );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final EmailOutboxService emailOutboxService;
+
+    private final Validator validator;
+
+    private final ObjectMapper objectMapper;
+
+    private final ThreadPoolTaskExecutor userImportExecutor;
+
+    private final int batchSize;
+
+    private final int maxRows;
+
+    private final Cache<String, ImportJob> jobs;
+
+    public UserImportServiceImpl( JdbcTemplate jdbcTemplate,
+                                  NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+                                  TransactionTemplate transactionTemplate,
+                                  EmailOutboxService emailOutboxService,
+                                  Validator validator,
+                                  ObjectMapper objectMapper,
+                                  @Qualifier("userImportExecutor") ThreadPoolTaskExecutor userImportExecutor,
+                                  @Value("${app.import.batch_size}") int batchSize,
+                                  @Value("${app.import.max_rows}") int maxRows,
+                                  @Value("${app.import.job_ttl}") Duration jobTtl ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.emailOutboxService = emailOutboxService;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.userImportExecutor = userImportExecutor;
+        this.batchSize = batchSize;
+        this.maxRows = maxRows;
+        // Il job viene riscritto ad ogni avanzamento e alla conclusione (touch): scade solo dopo un TTL senza
+        // avanzamenti, e i job conclusi restano consultabili per il TTL dalla conclusione
+        this.jobs = Caffeine.newBuilder()
+                .expireAfterWrite( jobTtl )
+                .build();
+    }
+
+
+    /**
+     * SUBMIT IMPORT
+     * @param format CSV (intestazione email,username) o NDJSON (un SignupDTO per riga)
+     * @param inputStream corpo della richiesta
+     * @return stato iniziale del job
+     */
+    @Override
+    public ImportJobDTO submitImport( FileFormat format, InputStream inputStream ) {
+        ImportJob job = new ImportJob( UUID.randomUUID().toString() );
+
+        List<ImportRow> rows = readRows( format, inputStream, job );
+
+        job.totalRows = rows.size() + job.failedRows.get();
+        job.processedRows.set( job.failedRows.get() );
+
+        jobs.put( job.id, job );
+
+        try {
+            userImportExecutor.execute( () -> runImport( job, rows ) );
+        } catch( TaskRejectedException e ) {
+            jobs.invalidate( job.id );
+            throw new appException( HttpStatus.SERVICE_UNAVAILABLE, ErrorCodeList.IMPORTBUSY );
+        }
+
+        return job.toDTO();
+    }
+
+
+    /**
+     * GET IMPORT JOB
+     * @param jobId id del job
+     * @return stato e avanzamento del job
+     */
+    @Override
+    public ImportJobDTO getImportJob( String jobId ) {
+        ImportJob job = jobs.getIfPresent( jobId );
+
+        if( job == null ) throw new ResourceNotFoundException( ErrorCodeList.NF404 );
+
+        return job.toDTO();
+    }
+
+
+    //**** METODI INTERNI ****//
+
+    /**
+     * READ ROWS, legge e valida tutte le righe; quelle non valide finiscono subito tra gli errori del job
+     * @param format formato del file
+     * @param inputStream corpo della richiesta
+     * @param job job a cui associare gli errori
+     * @return righe valide
+     */
+    private List<ImportRow> readRows( FileFormat format, InputStream inputStream, ImportJob job ) {
+        List<ImportRow> rows = new ArrayList<>();
+
+        try( BufferedReader reader = new BufferedReader( new InputStreamReader( inputStream, StandardCharsets.UTF_8 ) ) ) {
+            if( format == FileFormat.CSV ) {
+                readCsvRows( reader, rows, job );
+            } else {
+                readJsonRows( reader, rows, job );
+            }
+        } catch( IOException e ) {
+            // Anche un CSV malformato, ad esempio con virgolette non chiuse
+            throw new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.IMPORTERROR );
+        }
+
+        return rows;
+    }
+
+    /**
+     * READ CSV ROWS, un record per riga logica; la prima, se contiene email e username, è l'intestazione
+     * @param reader corpo della richiesta
+     * @param rows righe valide
+     * @param job job a cui associare gli errori
+     */
+    private void readCsvRows( BufferedReader reader, List<ImportRow> rows, ImportJob job ) throws IOException {
+        try( MappingIterator<String[]> records = CSV_RECORDS.readValues( reader ) ) {
+            CsvColumns columns = null;
+            int rowNumber = 0;
+
+            while( records.hasNextValue() ) {
+                String[] values = records.nextValue();
+
+                // Intestazione CSV: stabilisce la posizione delle colonne
+                if( columns == null ) {
+                    columns = CsvColumns.of( values );
+                    if( columns.isHeader ) continue;
+                }
+
+                addRow( rows, job, ++rowNumber, String.join( ",", values ), columns.parse( values ) );
+            }
+        }
+    }
+
+    /**
+     * READ JSON ROWS, un SignupDTO per riga
+     * @param reader corpo della richiesta
+     * @param rows righe valide
+     * @param job job a cui associare gli errori
+     */
+    private void readJsonRows( BufferedReader reader, List<ImportRow> rows, ImportJob job ) throws IOException {
+        int rowNumber = 0;
+        String line;
+
+        while( ( line = reader.readLine() ) != null ) {
+            if( line.isBlank() ) continue;
+
+            addRow( rows, job, ++rowNumber, line, parseJson( line ) );
+        }
+    }
+
+    /**
+     * ADD ROW, valida la riga: valida tra le righe da importare, altrimenti tra gli errori del job
+     * @param rows righe valide
+     * @param job job a cui associare gli errori
+     * @param rowNumber numero della riga, intestazione esclusa
+     * @param source testo della riga, riportato nell'errore
+     * @param signupDTO riga letta, null se illeggibile
+     */
+    private void addRow( List<ImportRow> rows, ImportJob job, int rowNumber, String source, SignupDTO signupDTO ) {
+        if( rowNumber > maxRows ) {
+            throw new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.IMPORTERROR );
+        }
+
+        String errorCode = validate( signupDTO );
+
+        if( errorCode != null ) {
+            job.addError( rowNumber, source, errorCode );
+        } else {
+            rows.add( new ImportRow( rowNumber, signupDTO ) );
+        }
+    }
+
+    private SignupDTO parseJson( String line ) {
+        try {
+            return objectMapper.readValue( line, SignupDTO.class );
+        } catch( IOException e ) {
+            return null;
+        }
+    }
+
+    /**
+     * VALIDATE, stessi vincoli di SignupDTO usati dalla signup
+     * @param signupDTO riga letta, null se illeggibile
+     * @return codice di errore, null se la riga è valida
+     */
+    private String validate( SignupDTO signupDTO ) {
+        if( signupDTO == null || signupDTO.getEmail() == null || signupDTO.getEmail().isBlank()
+                || signupDTO.getUsername() == null || signupDTO.getUsername().isBlank() ) {
+            return ErrorCodeList.FORMATERROR;
+        }
+
+        Set<ConstraintViolation<SignupDTO>> violations = validator.validate( signupDTO );
+
+        return violations.isEmpty() ? null : violations.iterator().next().getMessage();
+    }
+
+
+    /**
+     * RUN IMPORT, elabora le righe a blocchi di batchSize
+     * @param job job da aggiornare
+     * @param rows righe valide
+     */
+    private void runImport( ImportJob job, List<ImportRow> rows ) {
+        job.status = ImportJobStatus.RUNNING;
+        touch( job );
+
+        // Username ed email già visti in questo file: i duplicati interni sono errori di riga
+        Set<String> seenUsernames = new HashSet<>();
+        Set<String> seenEmails = new HashSet<>();
+
+        try {
+            for( int from = 0; from < rows.size(); from += batchSize ) {
+                List<ImportRow> chunk = rows.subList( from, Math.min( from + batchSize, rows.size() ) );
+
+                List<ImportRow> unique = new ArrayList<>( chunk.size() );
+                for( ImportRow row : chunk ) {
+                    if( !seenUsernames.add( row.signupDTO.getUsername() ) ) {
+                        job.addError( row.rowNumber, row.signupDTO.getUsername(), ErrorCodeList.EXISTINGUSERNAME );
+                    } else if( !seenEmails.add( row.signupDTO.getEmail() ) ) {
+                        job.addError( row.rowNumber, row.signupDTO.getEmail(), ErrorCodeList.EXISTINGEMAIL );
+                    } else {
+                        unique.add( row );
+                    }
+                }
+
+                importChunk( job, unique );
+
+                job.processedRows.addAndGet( chunk.size() );
+                touch( job );
+            }
+
+            job.status = ImportJobStatus.COMPLETED;
+        } catch( Exception e ) {
+            logger.error( "Import {} interrotto: {}", job.id, e.getMessage() );
+            job.status = ImportJobStatus.FAILED;
+        } finally {
+            job.finishedDate = LocalDateTime.now();
+            touch( job );
+        }
+    }
+
+    /**
+     * TOUCH, riscrive il job nella cache: la scadenza riparte da questo avanzamento
+     * @param job job aggiornato
+     */
+    private void touch( ImportJob job ) {
+        jobs.put( job.id, job );
+    }
+
+
+    /**
+     * IMPORT CHUNK, un blocco in una sola transazione.
+     * Se nel frattempo un'altra richiesta ha occupato username o email il blocco viene annullato
+     * e ripetuto una volta, con gli utenti in conflitto segnati come errori di riga
+     * @param job job da aggiornare
+     * @param chunk righe del blocco, senza duplicati interni
+     */
+    private void importChunk( ImportJob job, List<ImportRow> chunk ) {
+        if( chunk.isEmpty() ) return;
+
+        // Preparazione fuori dalla transazione, sul thread di userImportExecutor che esegue l'import
+        List<NewUser> newUsers = chunk.stream()
+                .map( this::makeNewUser )
+                .toList();
+
+        List<NewUser> candidates = newUsers;
+
+        for( int attempt = 1; ; attempt++ ) {
+            List<NewUser> toInsert = excludeExisting( job, candidates );
+
+            try {
+                transactionTemplate.executeWithoutResult( status -> insertBatch( toInsert ) );
+            } catch( DuplicateKeyException e ) {
+                if( attempt >= 2 ) throw e;
+                candidates = toInsert;
+                continue;
+            }
+
+            job.importedRows.addAndGet( toInsert.size() );
+            return;
+        }
+    }
+
+
+    /**
+     * EXCLUDE EXISTING, verifica l'unicità dell'intero blocco con una query per username e una per email
+     * @param job job a cui aggiungere gli errori
+     * @param newUsers utenti del blocco
+     * @return utenti non ancora presenti nel database
+     */
+    private List<NewUser> excludeExisting( ImportJob job, List<NewUser> newUsers ) {
+        Set<String> existingUsernames = new HashSet<>( namedParameterJdbcTemplate.queryForList(
+                EXISTING_USERNAMES,
+                Map.of( "usernames", newUsers.stream().map( newUser -> newUser.user.getUsername() ).toList() ),
+                String.class ) );
+
+        Set<String> existingEmails = new HashSet<>( namedParameterJdbcTemplate.queryForList(
+                EXISTING_EMAILS,
+                Map.of( "emails", newUsers.stream().map( newUser -> newUser.user.getEmail() ).toList() ),
+                String.class ) );
+
+        List<NewUser> toInsert = new ArrayList<>( newUsers.size() );
+
+        for( NewUser newUser : newUsers ) {
+            if( existingUsernames.contains( newUser.user.getUsername() ) ) {
+                job.addError( newUser.rowNumber, newUser.user.getUsername(), ErrorCodeList.EXISTINGUSERNAME );
+            } else if( existingEmails.contains( newUser.user.getEmail() ) ) {
+                job.addError( newUser.rowNumber, newUser.user.getEmail(), ErrorCodeList.EXISTINGEMAIL );
+            } else {
+                toInsert.add( newUser );
+            }
+        }
+
+        return toInsert;
+    }
+
+
+    /**
+     * INSERT BATCH, riserva gli id e inserisce utenti, profili e conferme con tre batch JDBC,
+     * poi accoda le email di verifica
+     * @param newUsers utenti da inserire
+     */
+    private void insertBatch( List<NewUser> newUsers ) {
+        if( newUsers.isEmpty() ) return;
+
+        List<Long> userIds = jdbcTemplate.queryForList( RESERVE_USER_IDS, Long.class, newUsers.size() );
+        List<Long> confirmationIds = jdbcTemplate.queryForList( RESERVE_CONFIRMATION_IDS, Long.class, newUsers.size() );
+
+        for( int i = 0; i < newUsers.size(); i++ ) {
+            newUsers.get( i ).user.setId( userIds.get( i ) );
+            newUsers.get( i ).confirmation.setId( confirmationIds.get( i ) );
+        }
+
+        jdbcTemplate.batchUpdate( INSERT_USER, newUsers, newUsers.size(), ( ps, newUser ) -> {
+            User user = newUser.user;
+            ps.setLong( 1, user.getId() );
+            ps.setString( 2, user.getUsername() );
+            ps.setString( 3, user.getEmail() );
+            ps.setString( 4, user.getPassword() );
+            ps.setBoolean( 5, user.isEnabled() );
+            ps.setBoolean( 6, user.isTemporaryPassword() );
+            ps.setTimestamp( 7, Timestamp.valueOf( user.getDateTokenCheck() ) );
+        } );
+
+        jdbcTemplate.batchUpdate( INSERT_PROFILE, newUsers, newUsers.size(), ( ps, newUser ) -> {
+            ps.setLong( 1, newUser.user.getId() );
+            ps.setString( 2, newUser.profile.getName().name() );
+            ps.setInt( 3, newUser.profile.getPower() );
+        } );
+
+        jdbcTemplate.batchUpdate( INSERT_CONFIRMATION, newUsers, newUsers.size(), ( ps, newUser ) -> {
+            Confirmation confirmation = newUser.confirmation;
+            ps.setLong( 1, confirmation.getId() );
+            ps.setObject( 2, confirmation.getToken() );
+            ps.setString( 3, confirmation.getTokenType().name() );
+            ps.setTimestamp( 4, Timestamp.valueOf( confirmation.getCreatedDate() ) );
+            ps.setTimestamp( 5, Timestamp.valueOf( confirmation.getLastRequestedDate() ) );
+            ps.setLong( 6, newUser.user.getId() );
+        } );
+
+        enqueueVerificationEmails( newUsers );
+    }
+
+
+    /**
+     * MAKE NEW USER, stessi valori iniziali di AuthenticationServiceImpl.createUser
+     * @param row riga valida
+     * @return utente, profilo e conferma da inserire
+     */
+    private NewUser makeNewUser( ImportRow row ) {
+        User user = new User();
+        user.setUsername( row.signupDTO.getUsername() );
+        user.setEmail( row.signupDTO.getEmail() );
+        user.setEnabled( false );
+        // La password temporanea viene generata e assegnata all'invio della mail di verifica
+        user.setPassword( User.PENDING_PASSWORD );
+        user.setTemporaryPassword( true );
+
+        Confirmation confirmation = new Confirmation( user );
+        confirmation.setTokenType( TokenType.EMAIL );
+
+        return new NewUser( row.rowNumber, user, new Profile( ProfileList.USER ), confirmation );
+    }
+
+
+    /**
+     * ENQUEUE VERIFICATION EMAILS, nella transazione del blocco: se il blocco viene annullato le email non partono
+     * @param newUsers utenti inseriti
+     */
+    private void enqueueVerificationEmails( List<NewUser> newUsers ) {
+        emailOutboxService.enqueueAll( newUsers.stream()
+                .map( newUser -> new EmailOutbox(
+                        EmailType.VERIFY,
+                        newUser.user.getId(),
+                        newUser.user.getUsername(),
+                        newUser.user.getEmail(),
+                        newUser.confirmation.getToken().toString(),
+                        MAIL_SUBJECT
+                ) )
+                .toList() );
+    }
+
+
+    private record ImportRow( int rowNumber, SignupDTO signupDTO ) {
+    }
+
+    private record NewUser( int rowNumber, User user, Profile profile, Confirmation confirmation ) {
+    }
+
+
+    /**
+     * Posizione delle colonne email e username nel CSV.
+     * Senza intestazione l'ordine è quello di SignupDTO: email,username
+     */
+    private record CsvColumns( int emailIndex, int usernameIndex, boolean isHeader ) {
+
+        static CsvColumns of( String[] firstRecord ) {
+            int emailIndex = -1;
+            int usernameIndex = -1;
+
+            for( int i = 0; i < firstRecord.length; i++ ) {
+                String name = firstRecord[i].trim().toLowerCase( Locale.ROOT );
+                if( name.equals( "email" ) ) emailIndex = i;
+                if( name.equals( "username" ) ) usernameIndex = i;
+            }
+
+            if( emailIndex < 0 || usernameIndex < 0 ) {
+                return new CsvColumns( 0, 1, false );
+            }
+
+            return new CsvColumns( emailIndex, usernameIndex, true );
+        }
+
+        SignupDTO parse( String[] values ) {
+            if( values.length <= Math.max( emailIndex, usernameIndex ) ) {
+                return null;
+            }
+
+            return new SignupDTO( values[emailIndex].trim(), values[usernameIndex].trim() );
+        }
+    }
+
+
+    /**
+     * Stato di un job, aggiornato dal thread di import e letto dalle richieste di polling
+     */
+    private static class ImportJob {
+
+        private final String id;
+
+        private final LocalDateTime createdDate = LocalDateTime.now();
+
+        private final AtomicInteger processedRows = new AtomicInteger();
+
+        private final AtomicInteger importedRows = new AtomicInteger();
+
+        private final AtomicInteger failedRows = new AtomicInteger();
+
+        private final ConcurrentLinkedQueue<ImportRowErrorDTO> errors = new ConcurrentLinkedQueue<>();
+
+        private volatile int totalRows;
+
+        private volatile ImportJobStatus status = ImportJobStatus.PENDING;
+
+        private volatile LocalDateTime finishedDate;
+
+        ImportJob( String id ) {
+            this.id = id;
+        }
+
+        void addError( int row, String value, String code ) {
+            errors.add( new ImportRowErrorDTO( row, value, code ) );
+            failedRows.incrementAndGet();
+        }
+
+        ImportJobDTO toDTO() {
+            return ImportJobDTO.builder()
+                    .jobId( id )
+                    .status( status )
+                    .totalRows( totalRows )
+                    .processedRows( processedRows.get() )
+                    .importedRows( importedRows.get() )
+                    .failedRows( failedRows.get() )
+                    .createdDate( createdDate )
+                    .finishedDate( finishedDate )
+                    .errors( errors.stream().sorted( ( a, b ) -> Integer.compare( a.getRow(), b.getRow() ) ).toList() )
+                    .build();
+        }
+    }
+}
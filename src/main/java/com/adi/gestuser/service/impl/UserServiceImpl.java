@@ -1,23 +1,40 @@
 package com.adi.gestuser.service.impl;
 
+import com.adi.gestuser.cache.ProfilePermissionCache;
+import com.adi.gestuser.cache.ProfilePermissions;
+import com.adi.gestuser.cache.UserCountCache;
+import com.adi.gestuser.cache.UserCredentialCache;
 import com.adi.gestuser.dto.*;
 import com.adi.gestuser.entity.*;
+import com.adi.gestuser.enums.CountMode;
+import com.adi.gestuser.enums.SearchMode;
 import com.adi.gestuser.exception.ErrorCodeList;
 import com.adi.gestuser.exception.ResourceNotFoundException;
 import com.adi.gestuser.exception.appException;
 import com.adi.gestuser.repository.*;
 import com.adi.gestuser.service.UserService;
+import com.adi.gestuser.utils.CursorCodec;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -30,6 +47,21 @@ public class UserServiceImpl implements UserService {
 
     private final ProfilePermissionRepository profilePermissionRepository;
 
+    private final ProfilePermissionCache profilePermissionCache;
+
+    private final UserCountCache userCountCache;
+
+    private final UserCredentialCache userCredentialCache;
+
+    @Value("${app.search.min_length}")
+    private int searchMinLength;
+
+    @Value("${app.batch.max_size}")
+    private int batchMaxSize;
+
+    @Value("${app.pagination.max_size}")
+    private int pageMaxSize;
+
 
     //**** VOID RETURNS ****//
 
@@ -104,21 +136,40 @@ public class UserServiceImpl implements UserService {
      */
     @Override
     public UserDTOInternal findDTOByUsernameOrEmail( String username, String email ) {
-        User user = userRepository.findByUsernameOrEmail( username, email )
-                .orElseThrow( () -> new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.NF404 ) );
+        // Username ed email arrivano dallo stesso valore di login: se diversi si resta sul percorso non in cache
+        if( !username.equals( email ) ) {
+            User user = userRepository.findByUsernameOrEmail( username, email )
+                    .orElseThrow( () -> new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.NF404 ) );
+
+            return buildUserDTOInternal( new UserCredentialProjection( user.getId(), user.getUsername(), user.getEmail(),
+                    user.getPassword(), user.isEnabled(), user.isTemporaryPassword(), user.getDateTokenCheck(),
+                    user.getProfile().getId(), user.getProfile().getName() ) );
+        }
 
-        UserDTO userDTO = mapUserToDTO( user );
+        UserCredentialProjection credentials = userCredentialCache.get( username,
+                value -> userRepository.findCredentialsByUsernameOrEmail( value ).orElse( null ) );
+
+        if( credentials == null ) {
+            throw new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.NF404 );
+        }
+
+        return buildUserDTOInternal( credentials );
+    }
+
+    private UserDTOInternal buildUserDTOInternal( UserCredentialProjection credentials ) {
+        ProfilePermissions profilePermissions = getProfilePermissions( credentials.profileId() );
 
         return UserDTOInternal.builder()
-                .password( user.getPassword() )
-                .id( user.getId() )
-                .username( user.getUsername() )
-                .email( user.getEmail() )
-                .isEnabled( user.isEnabled() )
-                .isTemporaryPassword( user.isTemporaryPassword() )
-                .dateTokenCheck( user.getDateTokenCheck() )
-                .profileName( String.valueOf( user.getProfile().getName() ) )
-                .profilePermissions( userDTO.getProfilePermissions() )
+                .password( credentials.password() )
+                .id( credentials.id() )
+                .username( credentials.username() )
+                .email( credentials.email() )
+                .isEnabled( credentials.isEnabled() )
+                .isTemporaryPassword( credentials.isTemporaryPassword() )
+                .dateTokenCheck( credentials.dateTokenCheck() )
+                .profileName( String.valueOf( credentials.profileName() ) )
+                .profilePermissions( profilePermissions.permissions() )
+                .permissionMask( profilePermissions.matrix().bits() )
                 .build();
     }
 
@@ -202,8 +253,25 @@ public class UserServiceImpl implements UserService {
      */
     @Override
     public UserDTO getUserDTOById( Long id ) {
-        User user = getUserById( id );
-        return mapUserToDTO( user );
+        User user = userRepository.findWithProfilePermissionsById( id )
+                .orElseThrow( () -> new ResourceNotFoundException( ErrorCodeList.NF404 ) );
+
+        // I permessi sono già caricati con l'utente: in caso di miss la cache si riempie senza altre query
+        Profile profile = user.getProfile();
+        ProfilePermissions profilePermissions = profilePermissionCache.get( profile.getId(),
+                profileId -> mapProfilePermissionsToDTO( profile ) );
+
+        return buildUserDTO( user, profilePermissions );
+    }
+
+    /**
+     * FIND DTO BY EMAIL
+     * @param email email dell'utente
+     */
+    @Override
+    public Optional<UserDTO> findDTOByEmail( String email ) {
+        return userRepository.findProjectionByEmail( email )
+                .map( user -> buildUserDTO( user, getProfilePermissions( user.profileId() ) ) );
     }
 
     /**
@@ -213,75 +281,163 @@ public class UserServiceImpl implements UserService {
      * @param sortBy ordinamento
      * @param sortDir direzione dell'ordinamento
      * @param powerOfUser potere dell'utente
+     * @param countMode modalità di calcolo del totale
      */
     @Override
-    public PagedResponseDTO<UserDTO> getAllUsers( int pageNo, int pageSize, String sortBy, String sortDir, int powerOfUser ) {
+    public PagedResponseDTO<UserDTO> getAllUsers( int pageNo, int pageSize, String sortBy, String sortDir, int powerOfUser,
+                                                  CountMode countMode ) {
 
-        // Ordinamento
-        Sort sort = sortDir.equalsIgnoreCase( Sort.Direction.ASC.name() ) ? Sort.by( sortBy ).ascending()
-                : Sort.by( sortBy ).descending();
+        checkPageSize( pageSize );
 
-        // Paginazione
-        Pageable pageable = PageRequest.of( pageNo, pageSize, sort );
+        // Ordinamento e paginazione
+        Pageable pageable = PageRequest.of( pageNo, pageSize, makeSort( sortBy, sortDir ) );
 
-        // Lista di tutti gli utenti
-        Page<User> userPageList =
-                userRepository.findAllByProfilePowerGreaterThanEqual( powerOfUser, pageable );
+        // Count esatto: Page con query di conteggio
+        if( countMode == CountMode.EXACT ) {
+            return makePagedResponse( userRepository.findProjectionsByPower( powerOfUser, pageable ) );
+        }
 
-        return makePagedResponse( userPageList );
+        // Altrimenti Slice, senza query di conteggio
+        Slice<UserProjection> userSliceList = userRepository.findProjectionSliceByPower( powerOfUser, pageable );
+
+        Long totalElements = countMode == CountMode.APPROXIMATE
+                ? userCountCache.get( "power:" + powerOfUser,
+                () -> userRepository.countByProfilePowerGreaterThanEqual( powerOfUser ) )
+                : null;
+
+        return makePagedResponse( userSliceList, totalElements );
     }
 
 
     /**
      * GET BY EMAIL CONTAINS
-     * @param email email dell'utente
+     * @param email testo da cercare nell'email
+     * @param searchMode CONTAINS o PREFIX
      * @param pageNo numero di pagina
      * @param pageSize dimensione della pagina
      * @param sortBy ordinamento
      * @param sortDir direzione dell'ordinamento
+     * @param countMode modalità di calcolo del totale
      */
     @Override
-    public PagedResponseDTO<UserDTO> getByEmailContains( String email, int pageNo, int pageSize, String sortBy, String sortDir ) {
+    public PagedResponseDTO<UserDTO> getByEmailContains( String email, SearchMode searchMode, int pageNo, int pageSize,
+                                                         String sortBy, String sortDir, CountMode countMode ) {
 
-        Sort sort = sortDir.equalsIgnoreCase( Sort.Direction.ASC.name() ) ? Sort.by( sortBy ).ascending()
-                : Sort.by( sortBy ).descending();
+        checkPageSize( pageSize );
+
+        String pattern = makeSearchPattern( email, searchMode );
+        Pageable pageable = PageRequest.of( pageNo, pageSize, makeSort( sortBy, sortDir ) );
+
+        if( countMode == CountMode.EXACT ) {
+            return makePagedResponse( userRepository.searchByEmail( pattern, pageable ) );
+        }
+
+        Slice<UserProjection> userSliceList = userRepository.searchSliceByEmail( pattern, pageable );
+
+        Long totalElements = countMode == CountMode.APPROXIMATE
+                ? userCountCache.get( "email:" + pattern, () -> userRepository.countSearchByEmail( pattern ) )
+                : null;
+
+        return makePagedResponse( userSliceList, totalElements );
+    }
+
+
+    /**
+     * GET BY USERNAME CONTAINS
+     * @param username testo da cercare nell'username
+     * @param searchMode CONTAINS o PREFIX
+     * @param pageNo numero di pagina
+     * @param pageSize dimensione della pagina
+     * @param sortBy ordinamento
+     * @param sortDir direzione dell'ordinamento
+     * @param countMode modalità di calcolo del totale
+     */
+    @Override
+    public PagedResponseDTO<UserDTO> getByUsernameContains( String username, SearchMode searchMode, int pageNo, int pageSize,
+                                                            String sortBy, String sortDir, CountMode countMode ) {
 
+        checkPageSize( pageSize );
 
-        Pageable pageable = PageRequest.of( pageNo, pageSize, sort );
+        String pattern = makeSearchPattern( username, searchMode );
+        Pageable pageable = PageRequest.of( pageNo, pageSize, makeSort( sortBy, sortDir ) );
 
+        if( countMode == CountMode.EXACT ) {
+            return makePagedResponse( userRepository.searchByUsername( pattern, pageable ) );
+        }
 
-        Page<User> userPageList = userRepository.findByEmailContainsIgnoreCase( pageable, email );
+        Slice<UserProjection> userSliceList = userRepository.searchSliceByUsername( pattern, pageable );
 
+        Long totalElements = countMode == CountMode.APPROXIMATE
+                ? userCountCache.get( "username:" + pattern, () -> userRepository.countSearchByUsername( pattern ) )
+                : null;
 
-        return makePagedResponse( userPageList );
+        return makePagedResponse( userSliceList, totalElements );
     }
 
 
     /**
-     * MAP USER TO DTO
-     * @param user utente
-     * @return oggetto UserDTO
+     * GET ALL USERS BY CURSOR, paginazione keyset ordinata per id decrescente
+     * @param cursor cursore restituito dalla pagina precedente, null per la prima pagina
+     * @param pageSize dimensione della pagina
+     * @param powerOfUser potere dell'utente
      */
-    public UserDTO mapUserToDTO( User user ) {
-        UserDTO userDTO = new UserDTO();
-        userDTO.setId( user.getId() );
-        userDTO.setUsername( user.getUsername() );
-        userDTO.setEmail( user.getEmail() );
-        userDTO.setEnabled( user.isEnabled() );
-        userDTO.setTemporaryPassword( user.isTemporaryPassword() );
-        userDTO.setDateTokenCheck( user.getDateTokenCheck() );
-        userDTO.setProfileName( String.valueOf( user.getProfile().getName() ) );
+    @Override
+    public CursorPagedResponseDTO<UserDTO> getAllUsersByCursor( String cursor, int pageSize, int powerOfUser ) {
+        checkPageSize( pageSize );
 
-        Set<ProfilePermission> profilePermissions = profilePermissionRepository
-                .findByProfileId( user.getProfile().getId() );
+        // Viene letto un elemento in più per sapere se esiste una pagina successiva
+        List<UserProjection> userList = userRepository.findProjectionsByPowerAfterId(
+                powerOfUser, decodeCursor( cursor ), PageRequest.ofSize( pageSize + 1 ) );
 
-        Set<ProfilePermissionDTO> profilePermissionDTOS = profilePermissions
-                .stream()
-                .map( this::mapProfilePermissionToDTO ).collect( Collectors.toSet() );
-        userDTO.setProfilePermissions( profilePermissionDTOS );
+        return makeCursorPagedResponse( userList, pageSize );
+    }
 
-        return userDTO;
 
+    /**
+     * GET BY EMAIL CONTAINS BY CURSOR, paginazione keyset ordinata per id decrescente
+     * @param email testo da cercare nell'email
+     * @param searchMode CONTAINS o PREFIX
+     * @param cursor cursore restituito dalla pagina precedente, null per la prima pagina
+     * @param pageSize dimensione della pagina
+     */
+    @Override
+    public CursorPagedResponseDTO<UserDTO> getByEmailContainsByCursor( String email, SearchMode searchMode, String cursor,
+                                                                       int pageSize ) {
+        checkPageSize( pageSize );
+
+        List<UserProjection> userList = userRepository.searchByEmailAfterId(
+                makeSearchPattern( email, searchMode ), decodeCursor( cursor ), PageRequest.ofSize( pageSize + 1 ) );
+
+        return makeCursorPagedResponse( userList, pageSize );
+    }
+
+
+    /**
+     * GET BY USERNAME CONTAINS BY CURSOR, paginazione keyset ordinata per id decrescente
+     * @param username testo da cercare nell'username
+     * @param searchMode CONTAINS o PREFIX
+     * @param cursor cursore restituito dalla pagina precedente, null per la prima pagina
+     * @param pageSize dimensione della pagina
+     */
+    @Override
+    public CursorPagedResponseDTO<UserDTO> getByUsernameContainsByCursor( String username, SearchMode searchMode, String cursor,
+                                                                          int pageSize ) {
+        checkPageSize( pageSize );
+
+        List<UserProjection> userList = userRepository.searchByUsernameAfterId(
+                makeSearchPattern( username, searchMode ), decodeCursor( cursor ), PageRequest.ofSize( pageSize + 1 ) );
+
+        return makeCursorPagedResponse( userList, pageSize );
+    }
+
+
+    /**
+     * MAP USER TO DTO
+     * @param user utente
+     * @return oggetto UserDTO
+     */
+    public UserDTO mapUserToDTO( User user ) {
+        return buildUserDTO( user, getProfilePermissions( user.getProfile().getId() ) );
     }
 
     /**
@@ -307,14 +463,19 @@ public class UserServiceImpl implements UserService {
      * MODIFY USER
      * @param id id dell'utente
      * @param userDTO oggetto UserDTO
+     * @param ifMatch valore dell'header If-Match, null se assente
      * @return oggetto UserDTO
      */
     @Override
-    public UserDTO modifyUser( Long id, UserDTO userDTO ) {
+    public UserDTO modifyUser( Long id, UserDTO userDTO, String ifMatch ) {
 
         // Recupera l'utente dal database.
         User userToModify = getUserById( id );
 
+        // Il client ha modificato una versione non più attuale: la scrittura viene rifiutata.
+        // Una modifica concorrente tra questa verifica e il salvataggio viene intercettata da @Version.
+        checkIfMatch( ifMatch, new UserVersion( userToModify.getVersion(), userToModify.getProfile().getVersion() ).toETag() );
+
         // Verifica se l'username e l'email forniti esistono già nel database.
         existingUserProperties( userDTO.getUsername(), userDTO.getEmail() );
 
@@ -336,11 +497,99 @@ public class UserServiceImpl implements UserService {
      */
     @Override
     public Set<ProfilePermissionDTO> findByProfileIdDTO( Long profileId ) {
-        Set<ProfilePermission> profilePermissions = profilePermissionRepository.findByProfileId( profileId );
+        return getProfilePermissions( profileId ).permissions();
+    }
 
-        return profilePermissions.stream()
-                .map( this::mapProfilePermissionToDTO )
-                .collect( Collectors.toSet() );
+
+    /**
+     * GET USERS BY IDS
+     * @param ids id degli utenti
+     * @return utenti trovati per id e id non trovati
+     */
+    @Override
+    public BatchResponseDTO<Long, UserDTO> getUsersByIds( List<Long> ids ) {
+        return makeUserBatchResponse( ids, userRepository::findProjectionsByIdIn, UserProjection::id );
+    }
+
+
+    /**
+     * GET USERS BY EMAILS
+     * @param emails email degli utenti
+     * @return utenti trovati per email ed email non trovate
+     */
+    @Override
+    public BatchResponseDTO<String, UserDTO> getUsersByEmails( List<String> emails ) {
+        return makeUserBatchResponse( emails, userRepository::findProjectionsByEmailIn, UserProjection::email );
+    }
+
+
+    /**
+     * GET USERS BY USERNAMES
+     * @param usernames username degli utenti
+     * @return utenti trovati per username e username non trovati
+     */
+    @Override
+    public BatchResponseDTO<String, UserDTO> getUsersByUsernames( List<String> usernames ) {
+        return makeUserBatchResponse( usernames, userRepository::findProjectionsByUsernameIn, UserProjection::username );
+    }
+
+
+    /**
+     * FIND BY PROFILE IDS DTO
+     * @param profileIds id dei profili
+     * @return permessi per profilo e id dei profili inesistenti
+     */
+    @Override
+    public BatchResponseDTO<Long, Set<ProfilePermissionDTO>> findByProfileIdsDTO( List<Long> profileIds ) {
+        Set<Long> keys = checkBatch( profileIds );
+
+        if( keys.isEmpty() ) {
+            return new BatchResponseDTO<>( Map.of(), List.of() );
+        }
+
+        Set<Long> existingIds = new HashSet<>( profileRepository.findIdsByIdIn( keys ) );
+
+        Map<Long, ProfilePermissions> permissionsByProfileId =
+                profilePermissionCache.getAll( existingIds, this::loadAllProfilePermissionDTOS );
+
+        Map<Long, Set<ProfilePermissionDTO>> results = new LinkedHashMap<>();
+        List<Long> misses = new ArrayList<>();
+
+        for( Long key : keys ) {
+            if( existingIds.contains( key ) ) {
+                results.put( key, permissionsByProfileId.getOrDefault( key, ProfilePermissions.EMPTY ).permissions() );
+            } else {
+                misses.add( key );
+            }
+        }
+
+        return new BatchResponseDTO<>( results, misses );
+    }
+
+
+    /**
+     * GET USER ETAG
+     * @param id id dell'utente
+     * @return ETag dell'utente, combinazione delle versioni di utente e profilo
+     */
+    @Override
+    public String getUserETag( Long id ) {
+        return userRepository.findVersionById( id )
+                .map( UserVersion::toETag )
+                .orElseThrow( () -> new ResourceNotFoundException( ErrorCodeList.NF404 ) );
+    }
+
+
+    /**
+     * GET PROFILE ETAG
+     * @param profileId id del profilo
+     * @return ETag del profilo e dei suoi permessi, null se il profilo non esiste
+     */
+    @Override
+    public String getProfileETag( Long profileId ) {
+        return profileRepository.findVersionById( profileId )
+                .map( String::valueOf )
+                .orElse( null );
     }
 
 
@@ -351,7 +600,8 @@ public class UserServiceImpl implements UserService {
      */
     public ProfileDTO getProfileByUserId( Long userId ) {
 
-        Profile profile = profileRepository.findByUserId( userId );
+        Profile profile = profileRepository.findWithPermissionsByUserId( userId )
+                .orElseThrow( () -> new ResourceNotFoundException( ErrorCodeList.NF404 ) );
         Set<PermissionDTO> permissionDTOS = profile.getProfilePermissions().stream().map( permission -> {
             PermissionDTO permissionDTO = new PermissionDTO();
             permissionDTO.setId( permission.getId() );
@@ -364,6 +614,8 @@ public class UserServiceImpl implements UserService {
         profileDTO.setName( String.valueOf( profile.getName() ) );
         profileDTO.setPower( profile.getPower() );
         profileDTO.setPermissions( permissionDTOS );
+        profileDTO.setPermissionMask( profilePermissionCache.get( profile.getId(),
+                profileId -> mapProfilePermissionsToDTO( profile ) ).matrix().bits() );
 
         return profileDTO;
     }
@@ -371,6 +623,24 @@ public class UserServiceImpl implements UserService {
 
     //**** METODI INTERNI ****//
 
+    /**
+     * MAP PROFILE PERMISSION TO DTO, a partire dalla proiezione di sola lettura
+     * @param profilePermission proiezione del permesso
+     * @return oggetto ProfilePermissionDTO
+     */
+    private ProfilePermissionDTO mapProfilePermissionToDTO( ProfilePermissionProjection profilePermission ) {
+
+        return ProfilePermissionDTO.builder()
+                .id( profilePermission.id() )
+                .permissionName( profilePermission.permissionName().name() )
+                .valueRead( profilePermission.valueRead() )
+                .valueCreate( profilePermission.valueCreate() )
+                .valueUpdate( profilePermission.valueUpdate() )
+                .valueDelete( profilePermission.valueDelete() )
+                .build();
+    }
+
+
     /**
      * GET USER BY ID
      * @param id id dell'utente
@@ -393,30 +663,319 @@ public class UserServiceImpl implements UserService {
     }
 
 
+    /**
+     * MAP USERS TO DTO, i permessi dei profili non in cache vengono letti con una sola query e raggruppati in memoria
+     * @param userList proiezioni degli utenti
+     * @return lista di UserDTO nello stesso ordine
+     */
+    private List<UserDTO> mapUsersToDTO( List<UserProjection> userList ) {
+        if( userList.isEmpty() ) {
+            return List.of();
+        }
+
+        Set<Long> profileIds = userList.stream()
+                .map( UserProjection::profileId )
+                .collect( Collectors.toSet() );
+
+        Map<Long, ProfilePermissions> permissionsByProfileId =
+                profilePermissionCache.getAll( profileIds, this::loadAllProfilePermissionDTOS );
+
+        return userList.stream()
+                .map( user -> buildUserDTO( user,
+                        permissionsByProfileId.getOrDefault( user.profileId(), ProfilePermissions.EMPTY ) ) )
+                .toList();
+    }
+
+
+    /**
+     * GET PROFILE PERMISSIONS, permessi in righe e in PermissionMatrix letti dalla cache
+     * @param profileId id del profilo
+     * @return voce di ProfilePermissionCache
+     */
+    private ProfilePermissions getProfilePermissions( Long profileId ) {
+        return profilePermissionCache.get( profileId, this::loadProfilePermissionDTOS );
+    }
+
+
+    /**
+     * MAP PROFILE PERMISSIONS TO DTO, a partire dai permessi già caricati con il profilo
+     * @param profile profilo con i permessi inizializzati
+     * @return insieme di ProfilePermissionDTO
+     */
+    private Set<ProfilePermissionDTO> mapProfilePermissionsToDTO( Profile profile ) {
+        return profile.getProfilePermissions().stream()
+                .map( this::mapProfilePermissionToDTO )
+                .collect( Collectors.toSet() );
+    }
+
+
+    /**
+     * LOAD PROFILE PERMISSION DTOS, caricamento dal database in caso di miss della cache
+     * @param profileId id del profilo
+     * @return insieme di ProfilePermissionDTO
+     */
+    private Set<ProfilePermissionDTO> loadProfilePermissionDTOS( Long profileId ) {
+        return profilePermissionRepository.findProjectionsByProfileId( profileId )
+                .stream()
+                .map( this::mapProfilePermissionToDTO )
+                .collect( Collectors.toSet() );
+    }
+
+
+    /**
+     * LOAD ALL PROFILE PERMISSION DTOS, caricamento massivo con una sola query e raggruppamento per profilo
+     * @param profileIds id dei profili
+     * @return mappa id profilo - insieme di ProfilePermissionDTO
+     */
+    private Map<Long, Set<ProfilePermissionDTO>> loadAllProfilePermissionDTOS( Set<Long> profileIds ) {
+        return profilePermissionRepository.findProjectionsByProfileIdIn( profileIds )
+                .stream()
+                .collect( Collectors.groupingBy(
+                        ProfilePermissionProjection::profileId,
+                        Collectors.mapping( this::mapProfilePermissionToDTO, Collectors.toSet() )
+                ) );
+    }
+
+
+    /**
+     * BUILD USER DTO
+     * @param user utente
+     * @param profilePermissions permessi del profilo dell'utente
+     * @return oggetto UserDTO
+     */
+    private UserDTO buildUserDTO( User user, ProfilePermissions profilePermissions ) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId( user.getId() );
+        userDTO.setUsername( user.getUsername() );
+        userDTO.setEmail( user.getEmail() );
+        userDTO.setEnabled( user.isEnabled() );
+        userDTO.setTemporaryPassword( user.isTemporaryPassword() );
+        userDTO.setDateTokenCheck( user.getDateTokenCheck() );
+        userDTO.setProfileName( String.valueOf( user.getProfile().getName() ) );
+        userDTO.setProfilePermissions( profilePermissions.permissions() );
+        userDTO.setPermissionMask( profilePermissions.matrix().bits() );
+
+        return userDTO;
+    }
+
+
+    /**
+     * BUILD USER DTO, a partire dalla proiezione di sola lettura
+     * @param user proiezione dell'utente
+     * @param profilePermissions permessi del profilo dell'utente
+     * @return oggetto UserDTO
+     */
+    private UserDTO buildUserDTO( UserProjection user, ProfilePermissions profilePermissions ) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId( user.id() );
+        userDTO.setUsername( user.username() );
+        userDTO.setEmail( user.email() );
+        userDTO.setEnabled( user.isEnabled() );
+        userDTO.setTemporaryPassword( user.isTemporaryPassword() );
+        userDTO.setDateTokenCheck( user.dateTokenCheck() );
+        userDTO.setProfileName( String.valueOf( user.profileName() ) );
+        userDTO.setProfilePermissions( profilePermissions.permissions() );
+        userDTO.setPermissionMask( profilePermissions.matrix().bits() );
+
+        return userDTO;
+    }
+
+
     /**
      * MAKE PAGED RESPONSE, in base alla lista di utenti restituisce un oggetto PagedResponseDTO
      * @param userPageList lista di utenti
      * @return oggetto PagedResponseDTO
      */
-    private PagedResponseDTO<UserDTO> makePagedResponse( Page<User> userPageList ) {
-        List<User> userList = userPageList.getContent();
+    private PagedResponseDTO<UserDTO> makePagedResponse( Page<UserProjection> userPageList ) {
+        return makePagedResponse( userPageList, userPageList.getTotalElements() );
+    }
 
-        List<UserDTO> userDTOList = userList.stream().map( this::mapUserToDTO ).toList();
+
+    /**
+     * MAKE PAGED RESPONSE, in base a una Slice di utenti restituisce un oggetto PagedResponseDTO
+     * @param userSliceList lista di utenti
+     * @param totalElements totale degli elementi, null se non calcolato
+     * @return oggetto PagedResponseDTO, con totalElements null e totalPages -1 se il totale non è noto
+     */
+    private PagedResponseDTO<UserDTO> makePagedResponse( Slice<UserProjection> userSliceList, Long totalElements ) {
+        List<UserProjection> userList = userSliceList.getContent();
+
+        List<UserDTO> userDTOList = mapUsersToDTO( userList );
 
         PagedResponseDTO<UserDTO> userResponseDTO = new PagedResponseDTO<>();
 
         userResponseDTO.setContent( userDTOList );
 
-        userResponseDTO.setPageNo( userPageList.getNumber() );
+        userResponseDTO.setPageNo( userSliceList.getNumber() );
+
+        userResponseDTO.setPageSize( userSliceList.getSize() );
 
-        userResponseDTO.setPageSize( userPageList.getSize() );
+        userResponseDTO.setTotalElements( totalElements );
 
-        userResponseDTO.setTotalElements( userPageList.getTotalElements() );
+        userResponseDTO.setTotalPages( totalElements == null ? -1
+                : ( int ) Math.ceil( ( double ) totalElements / userSliceList.getSize() ) );
 
-        userResponseDTO.setTotalPages( userPageList.getTotalPages() );
+        userResponseDTO.setLast( !userSliceList.hasNext() );
 
-        userResponseDTO.setLast( userPageList.isLast() );
+        return userResponseDTO;
+    }
+
+
+    /**
+     * MAKE SORT
+     * @param sortBy campo di ordinamento
+     * @param sortDir direzione dell'ordinamento
+     * @return oggetto Sort
+     */
+    private Sort makeSort( String sortBy, String sortDir ) {
+        return sortDir.equalsIgnoreCase( Sort.Direction.ASC.name() ) ? Sort.by( sortBy ).ascending()
+                : Sort.by( sortBy ).descending();
+    }
+
+
+    /**
+     * MAKE CURSOR PAGED RESPONSE, in base alla lista di utenti (con un elemento in più) restituisce
+     * un oggetto CursorPagedResponseDTO
+     * @param userList lista di utenti, al massimo pageSize + 1
+     * @param pageSize dimensione della pagina
+     * @return oggetto CursorPagedResponseDTO
+     */
+    private CursorPagedResponseDTO<UserDTO> makeCursorPagedResponse( List<UserProjection> userList, int pageSize ) {
+        boolean hasNext = userList.size() > pageSize;
+
+        List<UserProjection> pageContent = hasNext ? userList.subList( 0, pageSize ) : userList;
+
+        CursorPagedResponseDTO<UserDTO> userResponseDTO = new CursorPagedResponseDTO<>();
+
+        userResponseDTO.setContent( mapUsersToDTO( pageContent ) );
+
+        userResponseDTO.setPageSize( pageSize );
+
+        userResponseDTO.setNextCursor( hasNext ? CursorCodec.encode( pageContent.getLast().id() ) : null );
+
+        userResponseDTO.setLast( !hasNext );
 
         return userResponseDTO;
     }
+
+
+    /**
+     * DECODE CURSOR, la prima pagina parte dall'id massimo
+     * @param cursor cursore opaco
+     * @return id da cui riprendere la ricerca
+     */
+    private Long decodeCursor( String cursor ) {
+        return cursor == null || cursor.isEmpty() ? Long.MAX_VALUE : CursorCodec.decode( cursor );
+    }
+
+
+    /**
+     * MAKE USER BATCH RESPONSE, una query per gli utenti e una per i permessi non in cache
+     * @param requestedKeys chiavi richieste
+     * @param loader query IN sulle chiavi
+     * @param keyOf chiave di ogni proiezione
+     * @return risultati nell'ordine della richiesta e chiavi non trovate
+     */
+    private <K> BatchResponseDTO<K, UserDTO> makeUserBatchResponse( List<K> requestedKeys,
+                                                                    Function<Set<K>, List<UserProjection>> loader,
+                                                                    Function<UserProjection, K> keyOf ) {
+        Set<K> keys = checkBatch( requestedKeys );
+
+        if( keys.isEmpty() ) {
+            return new BatchResponseDTO<>( Map.of(), List.of() );
+        }
+
+        List<UserProjection> userList = loader.apply( keys );
+        List<UserDTO> userDTOList = mapUsersToDTO( userList );
+
+        Map<K, UserDTO> userDTOByKey = new HashMap<>();
+        for( int i = 0; i < userList.size(); i++ ) {
+            userDTOByKey.put( keyOf.apply( userList.get( i ) ), userDTOList.get( i ) );
+        }
+
+        Map<K, UserDTO> results = new LinkedHashMap<>();
+        List<K> misses = new ArrayList<>();
+
+        for( K key : keys ) {
+            UserDTO userDTO = userDTOByKey.get( key );
+
+            if( userDTO != null ) {
+                results.put( key, userDTO );
+            } else {
+                misses.add( key );
+            }
+        }
+
+        return new BatchResponseDTO<>( results, misses );
+    }
+
+
+    /**
+     * CHECK BATCH, rimuove i duplicati e verifica il numero massimo di chiavi
+     * @param requestedKeys chiavi richieste, null equivale a nessuna chiave
+     * @return chiavi distinte nell'ordine della richiesta
+     */
+    private <K> Set<K> checkBatch( List<K> requestedKeys ) {
+        if( requestedKeys == null ) {
+            return Set.of();
+        }
+
+        Set<K> keys = new LinkedHashSet<>( requestedKeys );
+        keys.remove( null );
+
+        if( keys.size() > batchMaxSize ) throw new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.BATCHTOOLARGE );
+
+        return keys;
+    }
+
+
+    /**
+     * CHECK IF MATCH, confronta l'header If-Match con l'ETag corrente
+     * @param ifMatch valore dell'header, null o vuoto se assente
+     * @param currentETag ETag corrente della risorsa
+     */
+    private void checkIfMatch( String ifMatch, String currentETag ) {
+        if( ifMatch == null || ifMatch.isBlank() ) return;
+
+        for( String eTag : ifMatch.split( "," ) ) {
+            String value = eTag.trim();
+
+            if( value.equals( "*" ) ) return;
+
+            // Confronto forte: gli ETag deboli non sono validi per If-Match
+            if( value.equals( "\"" + currentETag + "\"" ) ) return;
+        }
+
+        throw new appException( HttpStatus.PRECONDITION_FAILED, ErrorCodeList.VERSIONMISMATCH );
+    }
+
+
+    /**
+     * CHECK PAGE SIZE, tra 1 e app.pagination.max_size
+     * @param pageSize dimensione della pagina
+     */
+    private void checkPageSize( int pageSize ) {
+        if( pageSize < 1 || pageSize > pageMaxSize ) throw new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.SIZEERROR );
+    }
+
+
+    /**
+     * MAKE SEARCH PATTERN, costruisce il pattern LIKE in minuscolo con i caratteri speciali escapati
+     * @param text testo cercato
+     * @param searchMode CONTAINS ('%testo%') o PREFIX ('testo%')
+     * @return pattern per le query di ricerca
+     */
+    private String makeSearchPattern( String text, SearchMode searchMode ) {
+        // I testi troppo corti non possono usare gli indici e causerebbero scansioni complete della tabella
+        if( text == null || text.strip().length() < searchMinLength ) {
+            throw new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.SEARCHTOOSHORT );
+        }
+
+        String escaped = text.strip().toLowerCase( Locale.ROOT )
+                .replace( "\\", "\\\\" )
+                .replace( "%", "\\%" )
+                .replace( "_", "\\_" );
+
+        return searchMode == SearchMode.PREFIX ? escaped + "%" : "%" + escaped + "%";
+    }
 }
@@ -0,0 +1,43 @@
+package com.adi.gestuser.utils;
+
+import com.adi.gestuser.exception.ErrorCodeList;
+import com.adi.gestuser.exception.appException;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class CursorCodec {
+
+    private static final String PREFIX = "id:";
+
+
+    /**
+     * Codifica l'id dell'ultimo elemento restituito in un cursore opaco
+     * @param lastId id dell'ultimo elemento della pagina
+     * @return cursore in Base64 URL-safe
+     */
+    public static String encode( Long lastId ) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString( ( PREFIX + lastId ).getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Decodifica un cursore prodotto da encode
+     * @param cursor cursore opaco
+     * @return id dell'ultimo elemento della pagina precedente
+     */
+    public static Long decode( String cursor ) {
+        try {
+            String decoded = new String( Base64.getUrlDecoder().decode( cursor ), StandardCharsets.UTF_8 );
+
+            if( !decoded.startsWith( PREFIX ) ) {
+                throw new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.INVALID_CURSOR );
+            }
+
+            return Long.valueOf( decoded.substring( PREFIX.length() ) );
+        } catch( IllegalArgumentException e ) {
+            throw new appException( HttpStatus.BAD_REQUEST, ErrorCodeList.INVALID_CURSOR );
+        }
+    }
+}
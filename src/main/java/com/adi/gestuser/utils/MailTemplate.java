@@ -0,0 +1,116 @@
+package com.adi.gestuser.utils;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template HTML delle mail, compilato una sola volta in parti fisse e segnaposto {{nome}}.
+ * Il rendering concatena le parti in un solo StringBuilder dimensionato in anticipo;
+ * i valori vengono sempre sottoposti a escape HTML. Immutabile, condivisibile tra thread.
+ */
+public final class MailTemplate {
+
+    private static final String OPEN = "{{";
+
+    private static final String CLOSE = "}}";
+
+    // literals.length == keys.length + 1: il testo fisso prima di ogni segnaposto e quello finale
+    private final String[] literals;
+
+    private final String[] keys;
+
+    private final int literalLength;
+
+    private MailTemplate( String[] literals, String[] keys ) {
+        this.literals = literals;
+        this.keys = keys;
+
+        int length = 0;
+        for( String literal : literals ) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+
+    /**
+     * COMPILE, separa il testo fisso dai segnaposto
+     * @param source testo del template
+     * @return template compilato
+     */
+    public static MailTemplate compile( String source ) {
+        List<String> literals = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+
+        int position = 0;
+        int open;
+        while( ( open = source.indexOf( OPEN, position ) ) >= 0 ) {
+            int close = source.indexOf( CLOSE, open + OPEN.length() );
+            if( close < 0 ) {
+                throw new IllegalArgumentException( "Segnaposto non chiuso alla posizione " + open );
+            }
+            literals.add( source.substring( position, open ) );
+            keys.add( source.substring( open + OPEN.length(), close ).trim() );
+            position = close + CLOSE.length();
+        }
+        literals.add( source.substring( position ) );
+
+        return new MailTemplate( literals.toArray( String[]::new ), keys.toArray( String[]::new ) );
+    }
+
+    /**
+     * LOAD, legge e compila un template dal classpath
+     * @param path percorso nel classpath
+     * @return template compilato
+     */
+    public static MailTemplate load( String path ) {
+        try {
+            return compile( new ClassPathResource( path ).getContentAsString( StandardCharsets.UTF_8 ) );
+        } catch( IOException e ) {
+            throw new UncheckedIOException( "Template " + path + " non leggibile", e );
+        }
+    }
+
+
+    /**
+     * RENDER, sostituisce i segnaposto con i valori, con escape HTML
+     * @param values valori per nome di segnaposto
+     * @return HTML della mail
+     */
+    public String render( Map<String, String> values ) {
+        StringBuilder html = new StringBuilder( literalLength + keys.length * 64 );
+
+        for( int i = 0; i < keys.length; i++ ) {
+            html.append( literals[i] );
+
+            String value = values.get( keys[i] );
+            if( value == null ) {
+                throw new IllegalArgumentException( "Valore mancante per il segnaposto " + keys[i] );
+            }
+            html.append( needsEscape( value ) ? HtmlUtils.htmlEscape( value, StandardCharsets.UTF_8.name() ) : value );
+        }
+
+        return html.append( literals[keys.length] ).toString();
+    }
+
+
+    private static boolean needsEscape( String value ) {
+        for( int i = 0; i < value.length(); i++ ) {
+            switch( value.charAt( i ) ) {
+                case '<', '>', '&', '"', '\'' -> {
+                    return true;
+                }
+                default -> {
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+package com.adi.gestuser.utils;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * UUID versione 7 (RFC 9562): 48 bit di timestamp Unix in millisecondi seguiti da 74 bit casuali da SecureRandom.
+ * I valori generati in istanti successivi sono ordinati, quindi gli inserimenti finiscono in coda all'indice B-tree
+ * invece di distribuirsi su pagine casuali come con UUID.randomUUID().
+ */
+public final class TimeOrderedUuid {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private TimeOrderedUuid() {
+    }
+
+
+    /**
+     * GENERATE
+     * @return nuovo UUID v7
+     */
+    public static UUID generate() {
+        byte[] random = new byte[10];
+        RANDOM.nextBytes( random );
+
+        // timestamp (48) | versione (4) | rand_a (12)
+        long mostSigBits = ( System.currentTimeMillis() << 16 )
+                | 0x7000L
+                | ( ( random[0] & 0x0FL ) << 8 )
+                | ( random[1] & 0xFFL );
+
+        // variante (2) | rand_b (62)
+        long leastSigBits = 0;
+        for( int i = 2; i < 10; i++ ) {
+            leastSigBits = ( leastSigBits << 8 ) | ( random[i] & 0xFFL );
+        }
+        leastSigBits = ( leastSigBits & 0x3FFFFFFFFFFFFFFFL ) | 0x8000000000000000L;
+
+        return new UUID( mostSigBits, leastSigBits );
+    }
+}
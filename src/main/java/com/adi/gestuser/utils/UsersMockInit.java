@@ -13,11 +13,15 @@ import com.adi.gestuser.repository.UserRepository;
 import com.adi.gestuser.service.AuthenticationService;
 import com.adi.gestuser.service.UserService;
 import com.github.javafaker.Faker;
-import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -25,7 +29,8 @@ import java.util.Optional;
 import java.util.Set;
 
 @Component
-public class UsersMockInit {
+@ConditionalOnProperty(name = "app.mock.enabled", havingValue = "true")
+public class UsersMockInit implements CommandLineRunner {
 
     private static final Logger logger = LoggerFactory.getLogger(UsersMockInit.class);
 
@@ -36,6 +41,8 @@ public class UsersMockInit {
     ProfileRepository profileRepository;
     private final PermissionRepository permissionRepository;
     private final ProfilePermissionRepository profilePermissionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
 
     List<SignupDTO> listofAdminUsers = new ArrayList<>();
     List<SignupDTO> listofUsers = new ArrayList<>();
@@ -46,17 +53,23 @@ public class UsersMockInit {
                           AuthenticationService authenticationService,
                           UserRepository userRepository,
                           PermissionRepository permissionRepository,
-                          ProfilePermissionRepository profilePermissionRepository ) {
+                          ProfilePermissionRepository profilePermissionRepository,
+                          TransactionTemplate transactionTemplate,
+                          EntityManager entityManager ) {
         this.userService = userService;
         this.profileRepository = profileRepository;
         this.authenticationService = authenticationService;
         this.userRepository = userRepository;
         this.permissionRepository = permissionRepository;
         this.profilePermissionRepository = profilePermissionRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManager = entityManager;
     }
 
-    @PostConstruct
-    public void initUsers() {
+    // Runner e non @PostConstruct: gli insert partono ad applicazione avviata, dopo gli script di spring.sql.init
+    // che adeguano lo schema (es. db/confirmation-token.sql)
+    @Override
+    public void run( String... args ) {
         initPermissions();
 
         String darioMail = "dario@dad.it";
@@ -249,42 +262,48 @@ public class UsersMockInit {
             Long profileId,
             PermissionList permissionName
     ) {
-        Set<ProfilePermission> profilePermissions = profilePermissionRepository.findByProfileId( profileId );
+        // Profilo e permesso nella stessa transazione
+        transactionTemplate.executeWithoutResult( status -> {
+            Set<ProfilePermission> profilePermissions = profilePermissionRepository.findByProfileId( profileId );
+
+            // Ciclo su tutti i permessi disponibili
+            // Se il permesso è già presente, non fare nulla
+            for( ProfilePermission profilePermission : profilePermissions ) {
+                if( profilePermission.getPermission().getName().equals( permissionName ) ) {
+                    return;
+                }
+            }
+
+
+            // Cerco il permesso per il collegamento
+            Optional<Permission> permission = permissionRepository.findByName( permissionName );
 
-        // Ciclo su tutti i permessi disponibili
-        // Se il permesso è già presente, non fare nulla
-        for( ProfilePermission profilePermission : profilePermissions ) {
-            if( profilePermission.getPermission().getName().equals( permissionName ) ) {
+            if( permission.isEmpty() ) {
+                logger.warn( "Permesso non trovato: {}", permissionName );
                 return;
             }
-        }
-
 
-        // Cerco il profilo dell'utente per il collegamento
-        Profile profile = profileRepository.findByUserId( profileId );
+            // Cerco il profilo dell'utente per il collegamento
+            Profile profile = profileRepository.findByUserId( profileId );
 
-        // Cerco il permesso per il collegamento
-        Optional<Permission> permission = permissionRepository.findByName( permissionName );
+            // La versione del profilo viene incrementata al commit: cambia l'ETag, anche sull'istanza gestita
+            entityManager.lock( profile, LockModeType.OPTIMISTIC_FORCE_INCREMENT );
 
-        if( permission.isEmpty() ) {
-            logger.warn( "Permesso non trovato: {}", permissionName );
-            return;
-        }
+            Permission permissionEntity = permission.get();
 
-        Permission permissionEntity = permission.get();
-
-        // Creo il collegamento settando tutte le flag a TRUE(1)
-        ProfilePermission profilePermission = ProfilePermission
-                .builder()
-                .profile( profile )
-                .permission( permissionEntity )
-                .valueCreate( 1 )
-                .valueRead( 1 )
-                .valueUpdate( 1 )
-                .valueDelete( 1 )
-                .build();
+            // Creo il collegamento settando tutte le flag a TRUE(1)
+            ProfilePermission profilePermission = ProfilePermission
+                    .builder()
+                    .profile( profile )
+                    .permission( permissionEntity )
+                    .valueCreate( 1 )
+                    .valueRead( 1 )
+                    .valueUpdate( 1 )
+                    .valueDelete( 1 )
+                    .build();
 
-        profilePermissionRepository.save( profilePermission );
+            profilePermissionRepository.save( profilePermission );
+        } );
     }
 
 }
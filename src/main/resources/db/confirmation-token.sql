@@ -0,0 +1,17 @@
+-- Token delle conferme in colonna uuid nativa (vedi Confirmation.token).
+-- Sulla colonna varchar esistente l'alter di Hibernate (ddl-auto=update) fallisce, senza USING, con un warning nel log:
+-- qui viene convertita con un cast esplicito;
+-- vincolo uk_confirmations_token e indice (user_id, token_type) sono ricostruiti implicitamente da Postgres
+-- durante l'ALTER COLUMN TYPE, questo script non li tocca.
+-- Eseguito all'avvio dopo la creazione dello schema da parte di Hibernate (spring.sql.init), è idempotente.
+
+DO $$
+BEGIN
+    IF EXISTS ( SELECT 1 FROM information_schema.columns
+                WHERE table_name = 'confirmations' AND column_name = 'token' AND data_type <> 'uuid' ) THEN
+        ALTER TABLE "confirmations" ALTER COLUMN "token" TYPE uuid USING "token"::uuid;
+    END IF;
+END
+$$;
+
+ALTER TABLE IF EXISTS "confirmations" ALTER COLUMN "token" SET NOT NULL;
@@ -0,0 +1,34 @@
+-- Vincoli di unicità con nome esplicito (vedi User.UK_USERNAME / User.UK_EMAIL, dichiarati in @Table).
+-- Hibernate crea i nuovi vincoli con nome; i vincoli di unicità sulla stessa colonna con un altro nome
+-- (nomi generati da versioni precedenti dello schema) vengono cercati in pg_constraint e rimossi,
+-- oppure rinominati se il vincolo con il nome atteso manca.
+-- Eseguito all'avvio dopo la creazione dello schema da parte di Hibernate (spring.sql.init), è idempotente.
+
+DO $$
+DECLARE
+    expected RECORD;
+    existing RECORD;
+BEGIN
+    FOR expected IN SELECT * FROM ( VALUES ( 'username', 'uk_users_username' ),
+                                           ( 'email', 'uk_users_email' ) ) AS c( column_name, constraint_name )
+    LOOP
+        FOR existing IN
+            SELECT con.conname
+            FROM pg_constraint con
+            JOIN pg_attribute att ON att.attrelid = con.conrelid AND att.attnum = con.conkey[1]
+            WHERE con.conrelid = to_regclass( 'users' )
+              AND con.contype = 'u'
+              AND array_length( con.conkey, 1 ) = 1
+              AND att.attname = expected.column_name
+              AND con.conname <> expected.constraint_name
+        LOOP
+            IF EXISTS ( SELECT 1 FROM pg_constraint
+                        WHERE conrelid = to_regclass( 'users' ) AND conname = expected.constraint_name ) THEN
+                EXECUTE format( 'ALTER TABLE "users" DROP CONSTRAINT %I', existing.conname );
+            ELSE
+                EXECUTE format( 'ALTER TABLE "users" RENAME CONSTRAINT %I TO %I', existing.conname, expected.constraint_name );
+            END IF;
+        END LOOP;
+    END LOOP;
+END
+$$;
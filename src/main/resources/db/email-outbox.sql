@@ -0,0 +1,10 @@
+-- La coda mail non contiene più la password temporanea in chiaro: viene generata all'invio (vedi EmailOutboxSender).
+-- ddl-auto=update non rimuove le colonne: qui viene eliminata, insieme alle password delle righe ancora in coda.
+-- Eseguito all'avvio dopo la creazione dello schema da parte di Hibernate (spring.sql.init), è idempotente.
+
+ALTER TABLE IF EXISTS "email_outbox" DROP COLUMN IF EXISTS "temporary_password";
+
+-- Utenti ancora in attesa della mail: il segnaposto precedente (un hash bcrypt) diventa User.PENDING_PASSWORD,
+-- che non è un hash e non viene mai accettato al login
+UPDATE "users" SET "password" = '{pending}'
+WHERE "password" = '$2a$10$BQZr4nGuHDt8IqkkY6EAZOou0TS2VKfTNsrIla1sZvwNJC3rdxvFW';
@@ -0,0 +1,8 @@
+-- La versione del profilo viene incrementata da Hibernate quando i permessi vengono scritti
+-- (lock OPTIMISTIC_FORCE_INCREMENT sul profilo, vedi UsersMockInit.giveAllPermissions): il trigger che la incrementava
+-- nel database lasciava versioni obsolete nei profili gestiti e viene rimosso.
+-- Eseguito all'avvio dopo la creazione dello schema da parte di Hibernate (spring.sql.init), è idempotente.
+
+DROP TRIGGER IF EXISTS trg_profile_permissions_version ON "profile_permissions";
+
+DROP FUNCTION IF EXISTS bump_profile_version();
@@ -0,0 +1,14 @@
+-- Indici per la ricerca testuale sugli utenti.
+-- Eseguito all'avvio dopo la creazione dello schema da parte di Hibernate (spring.sql.init), è idempotente.
+
+-- Trigrammi: ricerca '%testo%' (SearchMode.CONTAINS)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_users_email_trgm ON "users" USING gin (lower("email") gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS idx_users_username_trgm ON "users" USING gin (lower("username") gin_trgm_ops);
+
+-- B-tree text_pattern_ops: ricerca 'testo%' (SearchMode.PREFIX)
+CREATE INDEX IF NOT EXISTS idx_users_email_prefix ON "users" (lower("email") text_pattern_ops);
+
+CREATE INDEX IF NOT EXISTS idx_users_username_prefix ON "users" (lower("username") text_pattern_ops);
@@ -0,0 +1,164 @@
+package com.adi.gestuser;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server SMTP minimo in memoria per test e benchmark: accetta ogni comando, senza autenticazione reale.
+ * Per i test conserva i messaggi ricevuti e può rifiutare gli invii con un errore temporaneo (451);
+ * per i benchmark scarta i messaggi e simula con la latenza di connessione handshake TCP, STARTTLS e AUTH.
+ */
+public final class SmtpStub implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+
+    private final long connectLatencyMillis;
+
+    private final boolean recordMessages;
+
+    private final ConcurrentLinkedQueue<String> received = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean rejecting;
+
+    public final AtomicLong connections = new AtomicLong();
+
+    public final AtomicLong messages = new AtomicLong();
+
+    /**
+     * Stub per i test: nessuna latenza, messaggi conservati
+     */
+    public SmtpStub() throws IOException {
+        this( 0, true );
+    }
+
+    /**
+     * Stub per i benchmark: messaggi scartati
+     * @param connectLatencyMillis attesa prima del saluto del server, ad ogni connessione
+     */
+    public SmtpStub( long connectLatencyMillis ) throws IOException {
+        this( connectLatencyMillis, false );
+    }
+
+    private SmtpStub( long connectLatencyMillis, boolean recordMessages ) throws IOException {
+        this.serverSocket = new ServerSocket( 0, 50, InetAddress.getLoopbackAddress() );
+        this.connectLatencyMillis = connectLatencyMillis;
+        this.recordMessages = recordMessages;
+        Thread.ofPlatform().daemon().name( "smtp-stub" ).start( this::accept );
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * REJECTING, con true ogni MAIL FROM riceve 451 e l'invio fallisce
+     * @param rejecting true per rifiutare gli invii
+     */
+    public void setRejecting( boolean rejecting ) {
+        this.rejecting = rejecting;
+    }
+
+    /**
+     * RECEIVED, messaggi ricevuti in ordine di arrivo
+     * @return messaggi MIME
+     */
+    public List<MimeMessage> received() {
+        Session session = Session.getInstance( new Properties() );
+        List<MimeMessage> result = new ArrayList<>();
+        for( String data : received ) {
+            try {
+                result.add( new MimeMessage( session, new ByteArrayInputStream( data.getBytes( StandardCharsets.ISO_8859_1 ) ) ) );
+            } catch( MessagingException e ) {
+                throw new IllegalStateException( "Messaggio non leggibile", e );
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        received.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+
+    private void accept() {
+        while( !serverSocket.isClosed() ) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                Thread.ofPlatform().daemon().start( () -> serve( socket ) );
+            } catch( IOException e ) {
+                return;
+            }
+        }
+    }
+
+    private void serve( Socket socket ) {
+        try( socket;
+             BufferedReader in = new BufferedReader( new InputStreamReader( socket.getInputStream(), StandardCharsets.ISO_8859_1 ) ) ) {
+            OutputStream out = socket.getOutputStream();
+
+            Thread.sleep( connectLatencyMillis );
+            reply( out, "220 stub ESMTP" );
+
+            String line;
+            while( ( line = in.readLine() ) != null ) {
+                String command = line.length() >= 4 ? line.substring( 0, 4 ).toUpperCase( Locale.ROOT ) : line;
+                switch( command ) {
+                    case "EHLO" -> reply( out, "250-stub\r\n250 OK" );
+                    case "MAIL" -> reply( out, rejecting ? "451 4.3.0 Temporary failure" : "250 OK" );
+                    case "DATA" -> {
+                        reply( out, "354 End data with <CR><LF>.<CR><LF>" );
+                        StringBuilder data = recordMessages ? new StringBuilder() : null;
+                        while( ( line = in.readLine() ) != null && !line.equals( "." ) ) {
+                            if( data != null ) {
+                                // Dot-stuffing: una riga che inizia con '.' arriva con un '.' in più
+                                data.append( line.startsWith( ".." ) ? line.substring( 1 ) : line ).append( "\r\n" );
+                            }
+                        }
+                        if( data != null ) {
+                            received.add( data.toString() );
+                        }
+                        messages.incrementAndGet();
+                        reply( out, "250 OK" );
+                    }
+                    case "QUIT" -> {
+                        reply( out, "221 Bye" );
+                        return;
+                    }
+                    default -> reply( out, "250 OK" );
+                }
+            }
+        } catch( IOException e ) {
+            // connessione chiusa dal client
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void reply( OutputStream out, String reply ) throws IOException {
+        out.write( ( reply + "\r\n" ).getBytes( StandardCharsets.US_ASCII ) );
+        out.flush();
+    }
+}
@@ -0,0 +1,24 @@
+package com.adi.gestuser;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * Database dei test: un PostgreSQL vuoto in un container Testcontainers, condiviso dai test con lo stesso contesto.
+ * Con TEST_DATASOURCE_URL (profilo test) i test usano invece quel database dedicato, senza Docker;
+ * non va mai indicato il database dell'applicazione, i test vi scrivono i propri dati.
+ */
+@TestConfiguration(proxyBeanMethods = false)
+public class TestDatabaseConfiguration {
+
+    @Bean
+    @ServiceConnection
+    @ConditionalOnExpression("'${TEST_DATASOURCE_URL:}'.isEmpty()")
+    PostgreSQLContainer<?> postgreSQLContainer() {
+        return new PostgreSQLContainer<>( DockerImageName.parse( "postgres:16-alpine" ) );
+    }
+}
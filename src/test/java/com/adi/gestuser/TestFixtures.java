@@ -0,0 +1,82 @@
+package com.adi.gestuser;
+
+import com.adi.gestuser.dto.SignupDTO;
+import com.adi.gestuser.entity.Permission;
+import com.adi.gestuser.entity.Profile;
+import com.adi.gestuser.entity.ProfilePermission;
+import com.adi.gestuser.enums.PermissionList;
+import com.adi.gestuser.repository.PermissionRepository;
+import com.adi.gestuser.repository.ProfilePermissionRepository;
+import com.adi.gestuser.repository.ProfileRepository;
+import com.adi.gestuser.service.AuthenticationService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.test.context.TestComponent;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+
+/**
+ * Dati creati dai test stessi: ogni chiamata crea un utente nuovo, con nomi casuali,
+ * così i test non dipendono dal seeding dell'applicazione né dall'ordine di esecuzione.
+ */
+@TestComponent
+@RequiredArgsConstructor
+public class TestFixtures {
+
+    private final AuthenticationService authenticationService;
+
+    private final ProfileRepository profileRepository;
+
+    private final PermissionRepository permissionRepository;
+
+    private final ProfilePermissionRepository profilePermissionRepository;
+
+    private final EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+
+    /**
+     * CREATE USER WITH PERMISSIONS, utente abilitato con profilo USER e tutti i flag dei permessi indicati
+     * @param permissionNames permessi del profilo
+     * @return id dell'utente, uguale all'id del profilo
+     */
+    public Long createUserWithPermissions( PermissionList... permissionNames ) {
+        String name = "test-" + UUID.randomUUID().toString().substring( 0, 8 );
+        SignupDTO signupDTO = SignupDTO.builder()
+                .username( name )
+                .email( name + "@example.com" )
+                .build();
+
+        Long userId = authenticationService.createUser( signupDTO, false ).getId();
+
+        transactionTemplate.executeWithoutResult( status -> {
+            Profile profile = profileRepository.findByUserId( userId );
+            entityManager.lock( profile, LockModeType.OPTIMISTIC_FORCE_INCREMENT );
+
+            for( PermissionList permissionName : permissionNames ) {
+                profilePermissionRepository.save( ProfilePermission.builder()
+                        .profile( profile )
+                        .permission( permission( permissionName ) )
+                        .valueRead( 1 )
+                        .valueCreate( 1 )
+                        .valueUpdate( 1 )
+                        .valueDelete( 1 )
+                        .build() );
+            }
+        } );
+
+        return userId;
+    }
+
+
+    private Permission permission( PermissionList permissionName ) {
+        return permissionRepository.findByName( permissionName ).orElseGet( () -> {
+            Permission permission = new Permission();
+            permission.setName( permissionName );
+            return permissionRepository.save( permission );
+        } );
+    }
+}
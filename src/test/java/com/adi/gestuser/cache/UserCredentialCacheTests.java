@@ -0,0 +1,79 @@
+package com.adi.gestuser.cache;
+
+import com.adi.gestuser.dto.UserCredentialProjection;
+import com.adi.gestuser.enums.ProfileList;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Invalidazione per utente di UserCredentialCache: solo le voci dell'utente scritto, con tutte le sue chiavi,
+ * e nessun valore letto prima di un'invalidazione avvenuta durante il caricamento.
+ */
+class UserCredentialCacheTests {
+
+    private final UserCredentialCache userCredentialCache =
+            new UserCredentialCache( 1_000, Duration.ofMinutes( 1 ), new SimpleMeterRegistry() );
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+
+    @Test
+    void invalidateRemovesOnlyTheEntriesOfTheUser() {
+        get( "mario", 1L );
+        get( "mario@example.com", 1L );
+        get( "luigi", 2L );
+
+        userCredentialCache.invalidate( 1L );
+
+        get( "mario", 1L );
+        get( "mario@example.com", 1L );
+        get( "luigi", 2L );
+        assertThat( loads ).hasValue( 5 );
+    }
+
+    @Test
+    void loadOfAnInvalidatedUserIsNotCached() {
+        userCredentialCache.get( "mario", key -> {
+            loads.incrementAndGet();
+            // Scrittura dell'utente mentre il caricamento è in corso
+            userCredentialCache.invalidate( 1L );
+            return credentials( 1L, key );
+        } );
+        get( "luigi", 2L );
+
+        get( "mario", 1L );
+        get( "luigi", 2L );
+        assertThat( loads ).hasValue( 3 );
+    }
+
+    @Test
+    void loadOfAnotherUserSurvivesTheInvalidation() {
+        userCredentialCache.get( "luigi", key -> {
+            loads.incrementAndGet();
+            userCredentialCache.invalidate( 1L );
+            return credentials( 2L, key );
+        } );
+
+        get( "luigi", 2L );
+        assertThat( loads ).hasValue( 1 );
+    }
+
+
+    private void get( String key, Long userId ) {
+        UserCredentialProjection credentials = userCredentialCache.get( key, value -> {
+            loads.incrementAndGet();
+            return credentials( userId, value );
+        } );
+        assertThat( credentials.id() ).isEqualTo( userId );
+    }
+
+    private static UserCredentialProjection credentials( Long userId, String key ) {
+        return new UserCredentialProjection( userId, key, key + "@example.com", "{pending}", true, false, null,
+                userId, ProfileList.USER );
+    }
+}
@@ -0,0 +1,96 @@
+package com.adi.gestuser.repository;
+
+import com.adi.gestuser.TestDatabaseConfiguration;
+import com.adi.gestuser.TestFixtures;
+import com.adi.gestuser.entity.Profile;
+import com.adi.gestuser.entity.ProfilePermission;
+import com.adi.gestuser.entity.User;
+import com.adi.gestuser.enums.PermissionList;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Letture tramite i grafi User.profilePermissions e Profile.permissions: utente, profilo, permessi del profilo
+ * e permessi devono arrivare in un solo prepared statement, senza caricamenti lazy successivi.
+ * Database isolato (TestDatabaseConfiguration), l'utente con i permessi viene creato dal test; il server web
+ * viene avviato perché è Tomcat a registrare il protocollo classpath: di hibernate.javax.cache.uri.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@Import({ TestDatabaseConfiguration.class, TestFixtures.class })
+class EntityGraphStatementCountTests {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProfileRepository profileRepository;
+
+    @Autowired
+    private TestFixtures testFixtures;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Statistics statistics;
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap( SessionFactory.class ).getStatistics();
+        userId = testFixtures.createUserWithPermissions( PermissionList.USER, PermissionList.PROJECT, PermissionList.OFFICE );
+
+        // Senza cache di secondo livello ogni caricamento lazy andrebbe al database e verrebbe contato
+        entityManagerFactory.getCache().evictAll();
+        statistics.clear();
+    }
+
+
+    @Test
+    void userProfilePermissionsGraphUsesOneStatement() {
+        int permissions = transactionTemplate.execute( status -> {
+            User user = userRepository.findWithProfilePermissionsById( userId ).orElseThrow();
+            return touch( user.getProfile().getProfilePermissions() );
+        } );
+
+        assertThat( permissions ).isEqualTo( 3 );
+        assertThat( statistics.getPrepareStatementCount() ).isEqualTo( 1 );
+    }
+
+    @Test
+    void profilePermissionsGraphUsesOneStatement() {
+        int permissions = transactionTemplate.execute( status -> {
+            Profile profile = profileRepository.findWithPermissionsByUserId( userId ).orElseThrow();
+            assertThat( profile.getUser().getUsername() ).isNotNull();
+            return touch( profile.getProfilePermissions() );
+        } );
+
+        assertThat( permissions ).isEqualTo( 3 );
+        assertThat( statistics.getPrepareStatementCount() ).isEqualTo( 1 );
+    }
+
+
+    // Legge ogni permesso come fa il mapping verso i DTO
+    private static int touch( Set<ProfilePermission> profilePermissions ) {
+        for( ProfilePermission profilePermission : profilePermissions ) {
+            assertThat( profilePermission.getPermission().getName() ).isNotNull();
+        }
+        return profilePermissions.size();
+    }
+}
@@ -0,0 +1,116 @@
+package com.adi.gestuser.repository;
+
+import com.adi.gestuser.TestDatabaseConfiguration;
+import com.adi.gestuser.TestFixtures;
+import com.adi.gestuser.entity.Permission;
+import com.adi.gestuser.entity.Profile;
+import com.adi.gestuser.entity.ProfilePermission;
+import com.adi.gestuser.enums.PermissionList;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cache di secondo livello dei permessi (regioni di hibernate-jcache.conf): la seconda lettura degli stessi
+ * permessi di un profilo e la seconda ricerca di un permesso per nome non devono eseguire SQL.
+ * Ogni lettura avviene in una propria transazione, quindi in un nuovo persistence context.
+ * Database isolato (TestDatabaseConfiguration), il profilo con i permessi viene creato dal test.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@Import({ TestDatabaseConfiguration.class, TestFixtures.class })
+class PermissionSecondLevelCacheTests {
+
+    @Autowired
+    private PermissionRepository permissionRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private TestFixtures testFixtures;
+
+    private Statistics statistics;
+
+    private Long profileId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap( SessionFactory.class ).getStatistics();
+        profileId = testFixtures.createUserWithPermissions( PermissionList.USER, PermissionList.CALENDAR );
+
+        entityManagerFactory.getCache().evictAll();
+        statistics.clear();
+    }
+
+
+    @Test
+    void repeatedProfilePermissionReadIssuesNoSql() {
+        Set<String> first = readProfilePermissions();
+        long statements = statistics.getPrepareStatementCount();
+        long profileHits = hits( "profiles" );
+        long collectionHits = hits( "profile-permission-collections" );
+        long profilePermissionHits = hits( "profile-permissions" );
+        long permissionHits = hits( "permissions" );
+
+        Set<String> second = readProfilePermissions();
+
+        assertThat( first ).hasSize( 2 );
+        assertThat( second ).isEqualTo( first );
+        assertThat( statistics.getPrepareStatementCount() ).isEqualTo( statements );
+        assertThat( hits( "profiles" ) ).isGreaterThan( profileHits );
+        assertThat( hits( "profile-permission-collections" ) ).isGreaterThan( collectionHits );
+        assertThat( hits( "profile-permissions" ) ).isGreaterThan( profilePermissionHits );
+        assertThat( hits( "permissions" ) ).isGreaterThan( permissionHits );
+    }
+
+    @Test
+    void repeatedFindByNameIssuesNoSql() {
+        Permission first = transactionTemplate.execute( status -> permissionRepository.findByName( PermissionList.USER ).orElseThrow() );
+        long statements = statistics.getPrepareStatementCount();
+        long queryHits = statistics.getQueryCacheHitCount();
+
+        Permission second = transactionTemplate.execute( status -> permissionRepository.findByName( PermissionList.USER ).orElseThrow() );
+
+        assertThat( second.getId() ).isEqualTo( first.getId() );
+        assertThat( statistics.getPrepareStatementCount() ).isEqualTo( statements );
+        assertThat( statistics.getQueryCacheHitCount() ).isGreaterThan( queryHits );
+    }
+
+
+    // Permessi del profilo con i flag, letti come fa il mapping verso i DTO
+    private Set<String> readProfilePermissions() {
+        return transactionTemplate.execute( status -> {
+            Profile profile = entityManager.find( Profile.class, profileId );
+            Set<String> permissions = new TreeSet<>();
+            for( ProfilePermission profilePermission : profile.getProfilePermissions() ) {
+                permissions.add( profilePermission.getPermission().getName() + ":" + profilePermission.getValueRead()
+                        + profilePermission.getValueCreate() + profilePermission.getValueUpdate() + profilePermission.getValueDelete() );
+            }
+            return permissions;
+        } );
+    }
+
+    private long hits( String region ) {
+        return statistics.getDomainDataRegionStatistics( region ).getHitCount();
+    }
+}
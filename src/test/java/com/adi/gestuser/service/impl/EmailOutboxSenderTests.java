@@ -0,0 +1,242 @@
+package com.adi.gestuser.service.impl;
+
+import com.adi.gestuser.SmtpStub;
+import com.adi.gestuser.TestDatabaseConfiguration;
+import com.adi.gestuser.dto.SignupDTO;
+import com.adi.gestuser.entity.EmailOutbox;
+import com.adi.gestuser.entity.User;
+import com.adi.gestuser.enums.EmailType;
+import com.adi.gestuser.service.AuthenticationService;
+import com.adi.gestuser.service.EmailOutboxService;
+import jakarta.mail.BodyPart;
+import jakarta.mail.Multipart;
+import jakarta.mail.Part;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Invio della coda mail verso SmtpStub: assegnazione della password temporanea inviata, una sola mail per utente,
+ * nuovi tentativi con backoff e stato FAILED dopo max_attempts.
+ * La coda viene svuotata chiamando dispatch; il polling del profilo test non interviene durante i test.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@Import(TestDatabaseConfiguration.class)
+class EmailOutboxSenderTests {
+
+    private static final SmtpStub SMTP_STUB;
+
+    static {
+        try {
+            SMTP_STUB = new SmtpStub();
+        } catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    // Paragrafi dell'HTML della mail: uno contiene la password temporanea
+    private static final Pattern PARAGRAPH = Pattern.compile( "<p>([^<\\s]+)</p>" );
+
+    @DynamicPropertySource
+    static void mailProperties( DynamicPropertyRegistry registry ) {
+        registry.add( "spring.mail.host", () -> "localhost" );
+        registry.add( "spring.mail.port", SMTP_STUB::port );
+    }
+
+    @Autowired
+    private EmailOutboxSender emailOutboxSender;
+
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private AuthenticationService authenticationService;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.mail.outbox.max_attempts}")
+    private int maxAttempts;
+
+    @Value("${app.mail.outbox.backoff_base}")
+    private Duration backoffBase;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update( "delete from \"email_outbox\"" );
+        SMTP_STUB.setRejecting( false );
+        SMTP_STUB.clear();
+    }
+
+
+    @Test
+    void sentVerificationAssignsTheMailedPassword() throws Exception {
+        String email = randomEmail();
+        Long userId = signup( email );
+
+        emailOutboxSender.dispatch();
+
+        List<MimeMessage> received = SMTP_STUB.received();
+        assertThat( received ).hasSize( 1 );
+        assertThat( recipient( received.get( 0 ) ) ).isEqualTo( email );
+        assertThat( mailedPasswordMatches( received.get( 0 ), password( userId ) ) ).isTrue();
+        assertThat( outboxRows( userId ) ).isEmpty();
+    }
+
+    @Test
+    void newVerificationReplacesTheQueuedOne() throws Exception {
+        Long userId = signup( randomEmail() );
+        String newEmail = randomEmail();
+
+        authenticationService.changeEmail( userId, newEmail );
+        assertThat( outboxRows( userId ) ).hasSize( 1 );
+
+        emailOutboxSender.dispatch();
+
+        List<MimeMessage> received = SMTP_STUB.received();
+        assertThat( received ).hasSize( 1 );
+        assertThat( recipient( received.get( 0 ) ) ).isEqualTo( newEmail );
+        assertThat( html( received.get( 0 ) ) ).contains( latestToken( userId ) );
+        assertThat( mailedPasswordMatches( received.get( 0 ), password( userId ) ) ).isTrue();
+    }
+
+    @Test
+    void queuedRowsOfTheSameUserSendOnePassword() throws Exception {
+        String email = randomEmail();
+        Long userId = signup( email );
+
+        // Seconda riga accodata senza passare da enqueueMailMessage: le due righe partono nello stesso blocco
+        emailOutboxService.enqueueAll( List.of( new EmailOutbox( EmailType.VERIFY, userId, "test", email, latestToken( userId ), "Verifica" ) ) );
+
+        emailOutboxSender.dispatch();
+
+        List<MimeMessage> received = SMTP_STUB.received();
+        assertThat( received ).hasSize( 1 );
+        assertThat( mailedPasswordMatches( received.get( 0 ), password( userId ) ) ).isTrue();
+        assertThat( outboxRows( userId ) ).isEmpty();
+    }
+
+    @Test
+    void failedSendIsRetriedAfterBackoffWithPasswordStillPending() throws Exception {
+        Long userId = signup( randomEmail() );
+        SMTP_STUB.setRejecting( true );
+
+        emailOutboxSender.dispatch();
+
+        Map<String, Object> row = outboxRows( userId ).get( 0 );
+        assertThat( row.get( "status" ) ).isEqualTo( "PENDING" );
+        assertThat( row.get( "attempts" ) ).isEqualTo( 1 );
+        assertThat( row.get( "last_error" ) ).isNotNull();
+        assertThat( ( (Timestamp) row.get( "next_attempt_at" ) ).toInstant() ).isAfter( Instant.now().plus( backoffBase.dividedBy( 2 ) ) );
+        assertThat( password( userId ) ).isEqualTo( User.PENDING_PASSWORD );
+
+        // Prima della scadenza del backoff la riga non viene ripresa
+        SMTP_STUB.setRejecting( false );
+        emailOutboxSender.dispatch();
+        assertThat( outboxRows( userId ).get( 0 ).get( "attempts" ) ).isEqualTo( 1 );
+        assertThat( SMTP_STUB.received() ).isEmpty();
+
+        jdbcTemplate.update( "update \"email_outbox\" set next_attempt_at = now() where user_id = ?", userId );
+        emailOutboxSender.dispatch();
+
+        List<MimeMessage> received = SMTP_STUB.received();
+        assertThat( received ).hasSize( 1 );
+        assertThat( mailedPasswordMatches( received.get( 0 ), password( userId ) ) ).isTrue();
+        assertThat( outboxRows( userId ) ).isEmpty();
+    }
+
+    @Test
+    void lastFailedAttemptMarksTheRowFailed() {
+        Long userId = signup( randomEmail() );
+        jdbcTemplate.update( "update \"email_outbox\" set attempts = ? where user_id = ?", maxAttempts - 1, userId );
+        SMTP_STUB.setRejecting( true );
+
+        emailOutboxSender.dispatch();
+
+        Map<String, Object> row = outboxRows( userId ).get( 0 );
+        assertThat( row.get( "status" ) ).isEqualTo( "FAILED" );
+        assertThat( row.get( "attempts" ) ).isEqualTo( maxAttempts );
+        assertThat( password( userId ) ).isEqualTo( User.PENDING_PASSWORD );
+    }
+
+
+    private Long signup( String email ) {
+        SignupDTO signupDTO = SignupDTO.builder()
+                .username( email.substring( 0, email.indexOf( '@' ) ) )
+                .email( email )
+                .build();
+        return authenticationService.createUser( signupDTO, true ).getId();
+    }
+
+    private static String randomEmail() {
+        return "outbox-" + UUID.randomUUID().toString().substring( 0, 8 ) + "@example.com";
+    }
+
+    private String password( Long userId ) {
+        return jdbcTemplate.queryForObject( "select password from \"users\" where id = ?", String.class, userId );
+    }
+
+    private String latestToken( Long userId ) {
+        return jdbcTemplate.queryForObject(
+                "select token::text from \"confirmations\" where user_id = ? order by id desc limit 1", String.class, userId );
+    }
+
+    private List<Map<String, Object>> outboxRows( Long userId ) {
+        return jdbcTemplate.queryForList(
+                "select status, attempts, last_error, next_attempt_at from \"email_outbox\" where user_id = ?", userId );
+    }
+
+    private boolean mailedPasswordMatches( MimeMessage message, String encodedPassword ) throws Exception {
+        Matcher matcher = PARAGRAPH.matcher( html( message ) );
+        while( matcher.find() ) {
+            // La password può contenere '&', che nell'HTML arriva come &amp;
+            if( passwordEncoder.matches( HtmlUtils.htmlUnescape( matcher.group( 1 ) ), encodedPassword ) ) return true;
+        }
+        return false;
+    }
+
+    private static String recipient( MimeMessage message ) throws Exception {
+        return message.getAllRecipients()[0].toString();
+    }
+
+    private static String html( Part part ) throws Exception {
+        if( part.isMimeType( "text/html" ) ) {
+            return (String) part.getContent();
+        }
+        if( part.getContent() instanceof Multipart multipart ) {
+            for( int i = 0; i < multipart.getCount(); i++ ) {
+                BodyPart bodyPart = multipart.getBodyPart( i );
+                String html = html( bodyPart );
+                if( html != null ) return html;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,55 @@
+-- Benchmark della ricerca per email/username su 1M di utenti, prima e dopo gli indici di db/search-indexes.sql.
+-- Usa una tabella di appoggio, non tocca "users". Esecuzione:
+--   psql -h localhost -p 5440 -U postgres -d smartaxcydb -f src/test/resources/db/user-search-benchmark.sql
+-- Confrontare "Execution Time" e il tipo di scan (Seq Scan / Bitmap Index Scan / Index Scan) dei piani.
+
+\timing on
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+DROP TABLE IF EXISTS bench_users;
+
+CREATE TABLE bench_users (
+    id       bigserial PRIMARY KEY,
+    username varchar(255) NOT NULL UNIQUE,
+    email    varchar(255) NOT NULL UNIQUE
+);
+
+INSERT INTO bench_users (username, email)
+SELECT 'user_' || md5(i::text), 'mail_' || md5(i::text) || '@example.com'
+FROM generate_series(1, 1000000) AS s(i);
+
+ANALYZE bench_users;
+
+-- PRIMA: query generata dal vecchio findByEmailContainsIgnoreCase (upper ... like '%x%'), nessun indice utilizzabile
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM bench_users WHERE upper(email) LIKE upper('%a1b2c%') ESCAPE '\' ORDER BY id DESC LIMIT 10;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT count(*) FROM bench_users WHERE upper(email) LIKE upper('%a1b2c%') ESCAPE '\';
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM bench_users WHERE lower(email) LIKE 'mail_a1b2%' ESCAPE '\' ORDER BY id DESC LIMIT 10;
+
+-- Indici equivalenti a db/search-indexes.sql
+CREATE INDEX bench_users_email_trgm ON bench_users USING gin (lower(email) gin_trgm_ops);
+CREATE INDEX bench_users_username_trgm ON bench_users USING gin (lower(username) gin_trgm_ops);
+CREATE INDEX bench_users_email_prefix ON bench_users (lower(email) text_pattern_ops);
+CREATE INDEX bench_users_username_prefix ON bench_users (lower(username) text_pattern_ops);
+
+ANALYZE bench_users;
+
+-- DOPO: query di UserRepository.searchByEmail / searchByUsername
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM bench_users WHERE lower(email) LIKE '%a1b2c%' ESCAPE '\' ORDER BY id DESC LIMIT 10;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT count(*) FROM bench_users WHERE lower(email) LIKE '%a1b2c%' ESCAPE '\';
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM bench_users WHERE lower(email) LIKE 'mail\_a1b2%' ESCAPE '\' ORDER BY id DESC LIMIT 10;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM bench_users WHERE lower(username) LIKE '%a1b2c%' ESCAPE '\' ORDER BY id DESC LIMIT 10;
+
+DROP TABLE bench_users;